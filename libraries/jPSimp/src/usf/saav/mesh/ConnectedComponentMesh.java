@@ -19,54 +19,136 @@
  */
 package usf.saav.mesh;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Vector;
 
 import usf.saav.common.IntegerX;
+import usf.saav.common.ParallelX;
 import usf.saav.common.algorithm.ArrayDisjointSet;
+import usf.saav.common.algorithm.ConcurrentArrayDisjointSet;
 
 
 public class ConnectedComponentMesh extends Mesh {
 	private static final long serialVersionUID = 8258598594472055291L;
+	private static final int PARALLEL_THRESHOLD = 1<<16;
 
 	private Mesh oldComp;
-	private ArrayDisjointSet djs;
 	private Vector<ConnectedComponent> tmpVec;
 
 	public ConnectedComponentMesh(Mesh oldComp){
 	    this.oldComp = oldComp;
-		djs = new ArrayDisjointSet( oldComp.size() );
 
-		for( int i = 0; i < oldComp.size(); i++ ){
-			float v0 = oldComp.get(i).value();
-			for( int n : oldComp.get(i).neighbors() ){
-				float v1 = oldComp.get(n).value();
-
-				if( v0 == v1 ){
-					djs.union(i, n);
-				}
-				if( Float.isNaN(v0) && Float.isNaN(v1) ){
-					djs.union(i, n);
-				}
-
-			}
+		int [] roots;
+		if( oldComp.size() < PARALLEL_THRESHOLD ){
+			roots = labelSerial( oldComp );
+		}
+		else {
+			roots = labelParallel( oldComp );
 		}
 
+		// components are numbered in order of their lowest index element
 		tmpVec = new Vector<ConnectedComponent>();
+		ConnectedComponent [] rootComp = new ConnectedComponent[oldComp.size()];
 		for( int i = 0; i < oldComp.size(); i++ ){
-			if( djs.find(i) == i ){
+			int root = roots[i];
+			if( rootComp[root] == null ){
 				ConnectedComponent m = new ConnectedComponent( size(), oldComp.get(i) );
 				add(m);
-				tmpVec.add( m );
+				rootComp[root] = m;
 			}
 			else{
-				tmpVec.add( tmpVec.get( djs.find(i) ) );
-				tmpVec.get( djs.find(i) ).add( oldComp.get(i) );
+				rootComp[root].add( oldComp.get(i) );
 			}
+			tmpVec.add( rootComp[root] );
 		}
 	}
     
+	private static boolean sameRegion( float v0, float v1 ){
+		return v0 == v1 || ( Float.isNaN(v0) && Float.isNaN(v1) );
+	}
+
+	private static int [] labelSerial( Mesh oldComp ){
+		ArrayDisjointSet djs = new ArrayDisjointSet( oldComp.size() );
+
+		for( int i = 0; i < oldComp.size(); i++ ){
+			float v0 = oldComp.get(i).value();
+			for( int n : oldComp.get(i).neighbors() ){
+				if( sameRegion( v0, oldComp.get(n).value() ) ){
+					djs.union(i, n);
+				}
+			}
+		}
+
+		int [] roots = new int[oldComp.size()];
+		for( int i = 0; i < roots.length; i++ ){
+			roots[i] = djs.find(i);
+		}
+		return roots;
+	}
+
+	/**
+	 * Block-parallel labeling of flat regions. The vertex range is split into
+	 * contiguous tiles (row bands for structured grids). Each tile first merges
+	 * the neighbors it contains, then neighbors across tile boundaries are
+	 * merged through the concurrent disjoint set.
+	 */
+	private static int [] labelParallel( Mesh oldComp ){
+		final Vertex [] verts  = oldComp.toArray( new Vertex[oldComp.size()] );
+		final int      size    = verts.length;
+		final float [] values  = new float[size];
+		final int      chunks  = ParallelX.getChunkCount( size, PARALLEL_THRESHOLD/4 );
+		final ConcurrentArrayDisjointSet djs = new ConcurrentArrayDisjointSet( size );
+
+		ParallelX.forEachChunk( size, chunks, (c,start,end) -> {
+			for( int i = start; i < end; i++ ){
+				values[i] = verts[i].value();
+			}
+		});
+
+		final int [][] boundary    = new int[chunks][];
+		final int []   boundaryCnt = new int[chunks];
+
+		// local labeling per tile, pairs crossing the tile boundary are saved for later
+		ParallelX.forEachChunk( size, chunks, (c,start,end) -> {
+			int [] pairs = new int[64];
+			int cnt = 0;
+			for( int i = start; i < end; i++ ){
+				for( int n : verts[i].neighbors() ){
+					if( !sameRegion( values[i], values[n] ) ) continue;
+					if( n >= start && n < end ){
+						djs.union(i, n);
+					}
+					else {
+						if( cnt+2 > pairs.length ) pairs = Arrays.copyOf( pairs, pairs.length*2 );
+						pairs[cnt++] = i;
+						pairs[cnt++] = n;
+					}
+				}
+			}
+			boundary[c]    = pairs;
+			boundaryCnt[c] = cnt;
+		});
+
+		// merge across tile boundaries
+		ParallelX.forEachChunk( chunks, chunks, (c,start,end) -> {
+			for( int t = start; t < end; t++ ){
+				for( int j = 0; j < boundaryCnt[t]; j+=2 ){
+					djs.union( boundary[t][j], boundary[t][j+1] );
+				}
+			}
+		});
+
+		final int [] roots = new int[size];
+		ParallelX.forEachChunk( size, chunks, (c,start,end) -> {
+			for( int i = start; i < end; i++ ){
+				roots[i] = djs.find(i);
+			}
+		});
+		return roots;
+	}
+
 	@Override
 	public int getVolumn() {
 	    return oldComp.size();
@@ -110,7 +192,10 @@ public class ConnectedComponentMesh extends Mesh {
 			}
 			set.remove(id);
 
-			return IntegerX.IntegerCollectionToArray(set);
+			// ascending ids, so the order does not depend on HashSet internals
+			int [] ret = IntegerX.IntegerCollectionToArray(set);
+			Arrays.sort( ret );
+			return ret;
 		}
 
 		@Override
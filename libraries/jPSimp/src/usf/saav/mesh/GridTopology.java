@@ -0,0 +1,142 @@
+/*
+ *     jPSimp - Persistence calculation and simplification of scalar fields.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.mesh;
+
+import java.util.Arrays;
+
+import usf.saav.scalarfield.ScalarField1D;
+import usf.saav.scalarfield.ScalarField2D;
+import usf.saav.scalarfield.ScalarField3D;
+import usf.saav.scalarfield.ScalarFieldND;
+
+/**
+ * Connectivity of a structured 1D, 2D or 3D grid (2, 8 or 26 neighbors).
+ * It holds no field values, so one instance can be shared by the meshes of
+ * every slice in a window of the same size.
+ */
+public class GridTopology {
+
+	private int dim;
+	private int width, height, depth;
+	private int [] offX, offY, offZ, offIdx;
+
+	public GridTopology( int width ){
+		this( 1, width, 1, 1 );
+	}
+
+	public GridTopology( int width, int height ){
+		this( 2, width, height, 1 );
+	}
+
+	public GridTopology( int width, int height, int depth ){
+		this( 3, width, height, depth );
+	}
+
+	private GridTopology( int dim, int width, int height, int depth ){
+		this.dim    = dim;
+		this.width  = width;
+		this.height = height;
+		this.depth  = depth;
+
+		int zr = (dim >= 3) ? 1 : 0;
+		int yr = (dim >= 2) ? 1 : 0;
+		int cnt = 0;
+		int max = (2*zr+1)*(2*yr+1)*3 - 1;
+		offX = new int[max]; offY = new int[max]; offZ = new int[max]; offIdx = new int[max];
+		// same ordering as the original per-vertex neighbor search
+		for( int _z = -zr; _z <= zr; _z++ ){
+			for( int _y = -yr; _y <= yr; _y++ ){
+				for( int _x = -1; _x <= 1; _x++ ){
+					if( _x == 0 && _y == 0 && _z == 0 ) continue;
+					offX[cnt] = _x;
+					offY[cnt] = _y;
+					offZ[cnt] = _z;
+					offIdx[cnt] = _z*width*height + _y*width + _x;
+					cnt++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the topology matching the dimensions of sf, or null if sf is not
+	 * a 1D, 2D or 3D field.
+	 */
+	public static GridTopology create( ScalarFieldND sf ){
+		if( sf instanceof ScalarField1D ) return new GridTopology( sf.getSize() );
+		if( sf instanceof ScalarField2D ) return new GridTopology( ((ScalarField2D)sf).getWidth(), ((ScalarField2D)sf).getHeight() );
+		if( sf instanceof ScalarField3D ) return new GridTopology( ((ScalarField3D)sf).getWidth(), ((ScalarField3D)sf).getHeight(), ((ScalarField3D)sf).getDepth() );
+		return null;
+	}
+
+	/**
+	 * Returns true if this topology can be used for sf.
+	 */
+	public boolean matches( ScalarFieldND sf ){
+		if( sf instanceof ScalarField1D ) return dim == 1 && width == sf.getSize();
+		if( sf instanceof ScalarField2D ) return dim == 2 && width == ((ScalarField2D)sf).getWidth() && height == ((ScalarField2D)sf).getHeight();
+		if( sf instanceof ScalarField3D ) return dim == 3 && width == ((ScalarField3D)sf).getWidth() && height == ((ScalarField3D)sf).getHeight() && depth == ((ScalarField3D)sf).getDepth();
+		return false;
+	}
+
+	public int getDimension( ){ return dim; }
+	public int getWidth( ){  return width; }
+	public int getHeight( ){ return height; }
+	public int getDepth( ){  return depth; }
+	public int getSize( ){   return width*height*depth; }
+	public int getMaxNeighbors( ){ return offIdx.length; }
+
+	/**
+	 * Writes the grid neighbors of nodeID into out, which must hold at least
+	 * getMaxNeighbors() elements.
+	 * @return the number of neighbors written.
+	 */
+	public int getNeighbors( int nodeID, int [] out ){
+		int x = nodeID % width;
+		int y = (nodeID / width) % height;
+		int z = nodeID / (width*height);
+
+		boolean interior = x > 0 && x < width-1
+						&& ( dim < 2 || ( y > 0 && y < height-1 ) )
+						&& ( dim < 3 || ( z > 0 && z < depth-1 ) );
+		if( interior ){
+			for( int i = 0; i < offIdx.length; i++ ){
+				out[i] = nodeID + offIdx[i];
+			}
+			return offIdx.length;
+		}
+
+		int cur = 0;
+		for( int i = 0; i < offIdx.length; i++ ){
+			int nx = x+offX[i], ny = y+offY[i], nz = z+offZ[i];
+			if( nx < 0 || nx >= width || ny < 0 || ny >= height || nz < 0 || nz >= depth ) continue;
+			out[cur++] = nodeID + offIdx[i];
+		}
+		return cur;
+	}
+
+	public int [] getNeighbors( int nodeID ){
+		int [] ret = new int[offIdx.length];
+		int cnt = getNeighbors( nodeID, ret );
+		if( cnt == ret.length ) return ret;
+		return Arrays.copyOf( ret, cnt );
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ *     jPSimp - Persistence calculation and simplification of scalar fields.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.mesh;
+
+import usf.saav.scalarfield.ScalarField1D;
+
+/**
+ * Mesh of a 1D field, built in a single scan. Each vertex is a run of equal
+ * valid samples and neighbors the runs beside it; invalid samples (0, NaN,
+ * infinite) break the path. Vertices are numbered and connected exactly as a
+ * ConnectedComponentMesh over a ScalarFieldMesh of the same field, so trees
+ * built on either are identical.
+ */
+public class PathMesh extends Mesh {
+	private static final long serialVersionUID = -2358015936471240617L;
+
+	private float [] values;
+	private float [] integral;
+	private int   [] start;
+	private int   [] count;
+	private boolean [] linked;		// run is adjacent to the previous run
+	private int valid = 0;
+
+	public PathMesh( ScalarField1D sf ){
+		this( toArray(sf) );
+	}
+
+	public PathMesh( float [] samples ){
+		int n = 0;
+		values   = new float[samples.length];
+		integral = new float[samples.length];
+		start    = new int[samples.length];
+		count    = new int[samples.length];
+		linked   = new boolean[samples.length];
+
+		boolean prevValid = false;
+		for( int i = 0; i < samples.length; i++ ){
+			float v = samples[i];
+			boolean isValid = !( Float.isNaN(v) || v == 0 || Float.isInfinite(v) );
+			if( !isValid ){
+				prevValid = false;
+				continue;
+			}
+			if( !prevValid || v != values[n-1] ){
+				values[n] = v;
+				start[n]  = i;
+				linked[n] = prevValid;
+				n++;
+			}
+			count[n-1]++;
+			integral[n-1] += v;
+			valid++;
+			prevValid = true;
+		}
+
+		for( int i = 0; i < n; i++ ){
+			add( new PathVertex(i) );
+		}
+	}
+
+	private static float [] toArray( ScalarField1D sf ){
+		float [] ret = new float[sf.getSize()];
+		for(int i = 0; i < ret.length; i++){
+			ret[i] = sf.getValue(i);
+		}
+		return ret;
+	}
+
+	@Override
+	public int getVolumn() {
+		return valid;
+	}
+
+	public float getValue( int id ){ return values[id]; }
+	public int   getCount( int id ){ return count[id]; }
+	public float getIntegral( int id ){ return integral[id]; }
+
+	/**
+	 * Previous vertex along the path, or -1 if id starts a segment.
+	 */
+	public int getPrev( int id ){ return linked[id] ? id-1 : -1; }
+
+	/**
+	 * Next vertex along the path, or -1 if id ends a segment.
+	 */
+	public int getNext( int id ){ return ( id+1 < size() && linked[id+1] ) ? id+1 : -1; }
+
+	class PathVertex implements Vertex {
+		private int id;
+
+		PathVertex( int id ){
+			this.id = id;
+		}
+
+		@Override public float value() {	return values[id]; }
+		@Override public int size() {		return count[id]; }
+		@Override public float integral() {	return integral[id]; }
+		@Override public int id() {			return id; }
+
+		@Override
+		public int[] neighbors() {
+			int p = getPrev(id), n = getNext(id);
+			if( p == -1 && n == -1 ) return new int[]{};
+			if( p == -1 ) return new int[]{ n };
+			if( n == -1 ) return new int[]{ p };
+			// ascending ids, as ConnectedComponent.neighbors()
+			return new int[]{ p, n };
+		}
+
+		@Override
+		public int[] positions() {
+			int [] ret = new int[count[id]];
+			for(int i = 0; i < ret.length; i++){
+				ret[i] = start[id]+i;
+			}
+			return ret;
+		}
+	}
+}
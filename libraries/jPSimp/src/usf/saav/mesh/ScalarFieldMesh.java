@@ -20,21 +20,22 @@
 package usf.saav.mesh;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 
 import usf.saav.scalarfield.ScalarField1D;
 import usf.saav.scalarfield.ScalarField2D;
 import usf.saav.scalarfield.ScalarField3D;
 import usf.saav.scalarfield.ScalarFieldND;
+import usf.saav.scalarfield.RankTransform;
 
 
 public class ScalarFieldMesh extends Mesh {
 
 	private static final long serialVersionUID = -4945822547977179117L;
 
-	private Map<Integer,Integer> elemID = new HashMap<Integer,Integer>();
+	private int [] elemID;
 	private ScalarFieldND sf;
+	private GridTopology topo;
+	private float [] rank = null;
 
 	public ScalarFieldMesh( ScalarField1D sf ){
 		this( (ScalarFieldND)sf );
@@ -49,95 +50,52 @@ public class ScalarFieldMesh extends Mesh {
 	}
 
 	public ScalarFieldMesh( ScalarFieldND sf ){
+		this( sf, GridTopology.create(sf) );
+	}
+
+	/**
+	 * Builds a mesh on a shared grid topology, so that only the values and
+	 * validity of sf need to be processed. The topology must match sf.
+	 */
+	public ScalarFieldMesh( ScalarFieldND sf, GridTopology topo ){
+		this( sf, topo, false );
+	}
+
+	/**
+	 * With ranked set, vertex values are the vertices' ranks (from 1, ties
+	 * broken by position) rather than the field's values. Vertices are then
+	 * ordered as in a ScalarField2D.UniqueField of the valid samples, without
+	 * building that field. Ranks above 2^24 are not exact as floats.
+	 */
+	public ScalarFieldMesh( ScalarFieldND sf, GridTopology topo, boolean ranked ){
+		if( topo != null && !topo.matches(sf) ) throw new IllegalArgumentException( "Grid topology does not match scalar field" );
 		this.sf = sf;
-		for(int i = 0; i < sf.getSize(); i++ ){
-		    boolean isValid = true;
-		    if (Float.isNaN(sf.getValue(i))) {
-//		        System.out.println("ISNAN");
-		        isValid = false;
-		    }
-		    if (sf.getValue(i) == 0) {
-//		        System.out.println("ISZERO");
-		        isValid = false;
-		    }
-		    if (sf.getValue(i) == Float.POSITIVE_INFINITY || sf.getValue(i) == Float.NEGATIVE_INFINITY) {
-//		        System.out.println("ISINFINITY");
-		        isValid = false;
-		    }
+		this.topo = topo;
+		this.elemID = new int[sf.getSize()];
+		for(int i = 0; i < elemID.length; i++ ){
+			float v = sf.getValue(i);
+			boolean isValid = !( Float.isNaN(v) || v == 0 || Float.isInfinite(v) );
 			if( !isValid )
-				elemID.put( i, -1 );
+				elemID[i] = -1;
 			else {
-				elemID.put( i, size() );
+				elemID[i] = size();
 				add( new ScalarFieldVertex(i) );
 			}
 		}
-	}
-	
-	private int[] getNeighbors( ScalarField3D sf, int nodeID) {
-			int width = sf.getWidth();
-			int height = sf.getHeight();
-			int depth = sf.getDepth();
-			
-			int slc    = nodeID/(width*height);
-			int slcOff = nodeID%(width*height);
-			
-			int x = slcOff%width;
-			int y = slcOff/width;
-			int z = slc;
-			
-			int [] ret = new int[26];
-			int cur = 0;
-			for( int _z = -1; _z <= 1; _z++ ){
-				if( (z+_z) < 0 || (z+_z)>= depth ) continue;				
-				for( int _y = -1; _y <= 1; _y++ ){
-					if( (y+_y) < 0 || (y+_y)>= height ) continue;				
-					for( int _x = -1; _x <= 1; _x++ ){
-						if( (x+_x) < 0 || (x+_x)>= width ) continue;
-						if( _x == 0 && _y == 0 && _z==0 ) continue;
-						ret[cur++] = (z+_z)*width*height+(y+_y)*width+(x+_x);
-					}
-				}
+		if( ranked ){
+			float [] vals = new float[size()];
+			for(int i = 0; i < vals.length; i++ ){
+				vals[i] = sf.getValue( get(i).id() );
 			}
-			if( cur == ret.length ) return ret;
-			return Arrays.copyOf( ret, cur );
-	}
-	
-	private int[] getNeighbors( ScalarField2D sf, int nodeID ){
-		int width = sf.getWidth();
-		int height = sf.getHeight();
-		
-		int y = nodeID/width;
-		int x = nodeID%width;
-		
-		int [] ret = new int[8];
-		int cur = 0;
-		for( int _y = -1; _y <= 1; _y++ ){
-			if( (y+_y) < 0 || (y+_y)>= height ) continue;				
-			for( int _x = -1; _x <= 1; _x++ ){
-				if( (x+_x) < 0 || (x+_x)>= width ) continue;
-				if( _x == 0 && _y == 0 ) continue;
-				ret[cur++] = (y+_y)*width+(x+_x);
+			int [] r = RankTransform.getRanks( vals );
+			rank = new float[r.length];
+			for(int i = 0; i < r.length; i++ ){
+				rank[i] = r[i]+1;
 			}
 		}
-		if( cur == ret.length ) return ret;
-		return Arrays.copyOf( ret, cur );
-	}
-	
-	private int[] getNeighbors( ScalarField1D sf, int nodeID ){
-		int w = sf.getSize();
-		if( nodeID > 0 && nodeID < (w-1) ) return new int[]{nodeID-1,nodeID+1};
-		if( nodeID == 0 && nodeID < (w-1) ) return new int[]{nodeID+1};
-		if( nodeID > 0 && nodeID == (w-1) ) return new int[]{nodeID-1};
-		return new int[]{};
 	}
 	
-	private int[] getNeighbors(int nid){
-		if( sf instanceof ScalarField1D ) return getNeighbors((ScalarField1D)sf,nid);
-		if( sf instanceof ScalarField2D ) return getNeighbors((ScalarField2D)sf,nid);
-		if( sf instanceof ScalarField3D ) return getNeighbors((ScalarField3D)sf,nid);
-		return new int[]{};
-	}
-
+	public GridTopology getTopology( ){ return topo; }
 
 	class ScalarFieldVertex implements Vertex {
 		private int nid;
@@ -148,6 +106,7 @@ public class ScalarFieldMesh extends Mesh {
 
 		@Override
 		public float value() {
+			if( rank != null ) return rank[ elemID[nid] ];
 			return sf.getValue(nid);
 		}
 
@@ -163,11 +122,13 @@ public class ScalarFieldMesh extends Mesh {
         
 		@Override
 		public int[] neighbors() {
-			int [] n = getNeighbors(nid);
+			if( topo == null ) return new int[]{};
+			int [] n = new int[topo.getMaxNeighbors()];
+			int cnt = topo.getNeighbors(nid, n);
 			int j = 0;
-			for(int i = 0; i < n.length; i++){
-				if( elemID.get( n[i] ) != -1 ){
-					n[j] = elemID.get( n[i] );
+			for(int i = 0; i < cnt; i++){
+				if( elemID[ n[i] ] != -1 ){
+					n[j] = elemID[ n[i] ];
 					j++;
 				}
 			}
@@ -21,6 +21,7 @@ package usf.saav.scalarfield;
 
 import usf.saav.common.monitoredvariables.Callback;
 import usf.saav.mesh.Mesh;
+import usf.saav.mesh.PathMesh;
 import usf.saav.topology.PseudoContourTree;
 
 public class PersistenceSimplifier1D extends PersistenceSimplifierND implements ScalarField1D {
@@ -35,6 +36,25 @@ public class PersistenceSimplifier1D extends PersistenceSimplifierND implements
 		this.sf = sf;
 	}
 
+	/**
+	 * Builds the tree on a PathMesh with every leaf paired, then simplifies
+	 * pairs up to the given fraction of the maximum persistence.
+	 */
+	public PersistenceSimplifier1D(ScalarField1D sf, float simplification, boolean runImmediately, boolean verbose ) {
+		this( sf, new PathMesh(sf), simplification, runImmediately, verbose );
+	}
+	private PersistenceSimplifier1D(ScalarField1D sf, PathMesh cl, float simplification, boolean runImmediately, boolean verbose ) {
+		super(sf, buildTree(cl, simplification), cl, runImmediately, verbose);
+		this.sf = sf;
+	}
+
+	private static PseudoContourTree buildTree( PathMesh cl, float simplification ){
+		PseudoContourTree ct = new PseudoContourTree( cl, false, false );
+		ct.calculatePersistencePairs();
+		ct.setSimplificationLevel( simplification );
+		return ct;
+	}
+
 	@Override public int 	getWidth() { return sf.getWidth(); }
 
 	@Override
@@ -26,10 +26,12 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.Vector;
 
+import usf.saav.common.algorithm.RadixSort;
 import usf.saav.common.monitoredvariables.Callback;
 import usf.saav.mesh.Mesh;
 import usf.saav.mesh.Mesh.Vertex;
 import usf.saav.topology.PseudoContourTree;
+import usf.saav.topology.SimplificationMetric;
 import usf.saav.topology.TopoTreeNode;
 import usf.saav.topology.TopoTreeNode.NodeType;
 
@@ -100,13 +102,13 @@ public abstract class PersistenceSimplifierND extends ScalarFieldND.Default impl
 			}
 		}
 		
-		if (ct.getSimplificationMetric().equals("persistence"))
-		    workList.sort( new TopoTreeNode.ComparePersistenceAscending() );
-		else if (ct.getSimplificationMetric().equals("size"))
-		    workList.sort( new TopoTreeNode.CompareVolumnAscending() );
+		SimplificationMetric metric = ct.getMetric();
+		float [] keys = new float[workList.size()];
+		for( int i = 0; i < keys.length; i++ ) keys[i] = metric.getPairKey( workList.get(i) );
+		int [] order = RadixSort.sortAscending( keys );
 
 		for( int i = 0; i < workList.size(); i++ ){
-			TopoTreeNode n = workList.get(i);
+			TopoTreeNode n = workList.get( order[i] );
 			simplify( n );
 		}
 
@@ -0,0 +1,84 @@
+/*
+ *     jPSimp - Persistence calculation and simplification of scalar fields.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.scalarfield;
+
+import usf.saav.common.ParallelX;
+import usf.saav.common.algorithm.RadixSort;
+import usf.saav.common.data.FloatStorage;
+
+/**
+ * Rank transform of a field: each sample is replaced by its position in
+ * value order, ties broken by ascending index, so that no two samples share
+ * a value. Sorting uses the parallel radix sort over primitive keys. NaN
+ * samples take no rank and stay NaN.
+ */
+public class RankTransform {
+
+	/**
+	 * Rank of each value, or -1 for NaN.
+	 */
+	public static int [] getRanks( float [] values ){
+		final int [] perm = RadixSort.sortAscending( values );
+		final int [] ret = new int[values.length];
+		// NaN sorts above +infinity, so the valid samples come first
+		int n = values.length;
+		while( n > 0 && Float.isNaN( values[perm[n-1]] ) ) n--;
+		final int valid = n;
+		ParallelX.forEachChunk( perm.length, ParallelX.getChunkCount( perm.length, 1<<15 ), (c,start,end) -> {
+			for(int i = start; i < end; i++){
+				ret[ perm[i] ] = ( i < valid ) ? i : -1;
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * Ranks scaled to [0,100], as in ScalarField2D.UniqueField.
+	 */
+	public static float [] transform( float [] values ){
+		int [] rank = getRanks( values );
+		int n = 0;
+		for( int r : rank ) if( r >= 0 ) n++;
+		float [] ret = new float[values.length];
+		for(int i = 0; i < ret.length; i++){
+			ret[i] = ( rank[i] < 0 ) ? Float.NaN : (float)rank[i]/(float)(n-1)*100.0f;
+		}
+		return ret;
+	}
+
+	public static float [] transform( ScalarFieldND sf ){
+		float [] vals = new float[sf.getSize()];
+		ScalarFieldND.Default.copyTo( sf, new FloatStorage.Array( vals ) );
+		return transform( vals );
+	}
+
+	public static ScalarField1D transform( ScalarField1D sf ){
+		return new ScalarField1D.ArrayField( transform( (ScalarFieldND)sf ) );
+	}
+
+	public static ScalarField2D transform( ScalarField2D sf ){
+		return new ScalarField2D.ArrayField( sf.getWidth(), sf.getHeight(), transform( (ScalarFieldND)sf ) );
+	}
+
+	public static ScalarField3D transform( ScalarField3D sf ){
+		return new ScalarField3D.StorageField( sf.getWidth(), sf.getHeight(), sf.getDepth(), new FloatStorage.Array( transform( (ScalarFieldND)sf ) ) );
+	}
+
+}
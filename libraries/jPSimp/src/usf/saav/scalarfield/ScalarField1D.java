@@ -40,6 +40,21 @@ public interface ScalarField1D extends ScalarFieldND {
 		@Override public int getWidth() { return w; }
 	}
 	
+	public class ArrayField extends ScalarField1D.Default {
+		float [] data;
+		public ArrayField( int w ) {
+			this( new float[w] );
+		}
+		public ArrayField( float [] data ) {
+			this.data = data;
+		}
+		public float [] getArray() { return data; }
+		@Override public float [] getBackingArray() { return data; }
+		@Override public int getSize() { return data.length; }
+		@Override public float getValue(int x) { return data[x]; }
+		@Override public int getWidth() { return data.length; }
+	}
+	
 	public abstract class Default extends ScalarFieldND.Default implements ScalarField1D {
 
 		protected Default( ){ }
@@ -22,11 +22,10 @@ package usf.saav.scalarfield;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Random;
-import java.util.Vector;
 
 
 public interface ScalarField2D extends ScalarFieldND {
@@ -35,6 +34,34 @@ public interface ScalarField2D extends ScalarFieldND {
 	public double [] getCoordinate( int x, int y );
 	public int getWidth() ;
 	public int getHeight();
+
+	/**
+	 * Copies the w x h region starting at (x0,y0) into dst at offset, x fastest.
+	 */
+	public default void getRegion( int x0, int y0, int w, int h, float [] dst, int offset ){
+		for(int y = 0; y < h; y++){
+			for(int x = 0; x < w; x++){
+				dst[offset++] = getValue( x0+x, y0+y );
+			}
+		}
+	}
+
+	/**
+	 * Puts the w x h region starting at (x0,y0) into dst, x fastest, advancing its position.
+	 */
+	public default void getRegion( int x0, int y0, int w, int h, FloatBuffer dst ){
+		if( dst.remaining() < w*h ) throw new BufferOverflowException();
+		if( dst.hasArray() ){
+			getRegion( x0, y0, w, h, dst.array(), dst.arrayOffset()+dst.position() );
+			dst.position( dst.position()+w*h );
+			return;
+		}
+		float [] row = new float[w];
+		for(int y = 0; y < h; y++){
+			getRegion( x0, y0+y, w, 1, row, 0 );
+			dst.put( row );
+		}
+	}
 	
 
 	public abstract class Default extends ScalarFieldND.Default implements ScalarField2D {
@@ -63,6 +90,19 @@ public interface ScalarField2D extends ScalarFieldND {
 		
 		}
 
+		/**
+		 * Region copy out of a row-major array with row length srcWidth starting at srcOffset.
+		 */
+		public static void copyRegion( float [] src, int srcOffset, int srcWidth, int x0, int y0, int w, int h, float [] dst, int offset ){
+			if( x0 == 0 && w == srcWidth ){
+				System.arraycopy( src, srcOffset + y0*srcWidth, dst, offset, w*h );
+				return;
+			}
+			for(int y = 0; y < h; y++){
+				System.arraycopy( src, srcOffset + (y0+y)*srcWidth + x0, dst, offset + y*w, w );
+			}
+		}
+
 	}	
 	
 	public class Empty extends ScalarField2D.Default {
@@ -96,6 +136,13 @@ public interface ScalarField2D extends ScalarFieldND {
 			height = h;
 		}
 
+		public ArrayField( int w, int h, float [] data ){
+			if( data.length < w*h ) throw new IllegalArgumentException( "Array too small for " + w + "x" + h + " field" );
+			this.data = data;
+			width = w;
+			height = h;
+		}
+
 		public ArrayField(String filename) throws IOException {
 			BufferedReader reader = new BufferedReader( new FileReader(filename) );
 			String [] wh = reader.readLine().split("\\s+");
@@ -115,6 +162,12 @@ public interface ScalarField2D extends ScalarFieldND {
 		@Override public int getHeight() { return height; }
 		@Override public float getValue(int x, int y) { return data[y*width+x]; }
 		@Override public float getValue(int idx) { return data[idx]; }
+		@Override public float [] getBackingArray() { return data; }
+
+		@Override
+		public void getRegion( int x0, int y0, int w, int h, float [] dst, int offset ){
+			copyRegion( data, 0, width, x0, y0, w, h, dst, offset );
+		}
 
 
 	}
@@ -152,39 +205,15 @@ public interface ScalarField2D extends ScalarFieldND {
 	}
 	
 	
+	/**
+	 * Ranks of the samples scaled to [0,100], ties broken by index.
+	 * See RankTransform.
+	 */
 	public class UniqueField extends ScalarField2D.ArrayField {
 		
-		
 		public UniqueField( ScalarField2D src ){
-			super(src.getWidth(),src.getHeight());
-						
-			Vector<val_sorter> ind = new Vector<val_sorter>();
-			for(int i = 0; i < data.length; i++){
-				data[i] = src.getValue(i);
-				ind.add(new val_sorter(i));
-			}
-			Collections.sort( ind, new Comparator<val_sorter>(){
-				@Override
-				public int compare(val_sorter arg0, val_sorter arg1) {
-					if( data[arg0.idx] < data[arg1.idx] ) return -1;
-					if( data[arg0.idx] > data[arg1.idx] ) return  1;
-					return 0;
-				}				
-			});
-
-			for(int i = 0; i < ind.size(); i++){
-				data[ind.get(i).idx] = (float)i/(float)(ind.size()-1)*100.0f;
-			}
-
+			super( src.getWidth(), src.getHeight(), RankTransform.transform( (ScalarFieldND)src ) );
 		}
-		
-		class val_sorter {
-			int idx;
-			val_sorter( int idx ){
-				this.idx = idx;
-			}
-		}
-
 
 	}
 
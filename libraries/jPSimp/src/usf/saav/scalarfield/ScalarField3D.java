@@ -21,7 +21,10 @@ package usf.saav.scalarfield;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.BufferOverflowException;
+import java.nio.FloatBuffer;
 
+import usf.saav.common.data.FloatStorage;
 
 
 public interface ScalarField3D extends ScalarFieldND {
@@ -31,6 +34,36 @@ public interface ScalarField3D extends ScalarFieldND {
 	public int getHeight();
 	public int getDepth() ;
 
+	/**
+	 * Copies the w x h x d box starting at (x0,y0,z0) into dst at offset, x fastest.
+	 */
+	public default void getRegion( int x0, int y0, int z0, int w, int h, int d, float [] dst, int offset ){
+		for(int z = 0; z < d; z++){
+			for(int y = 0; y < h; y++){
+				for(int x = 0; x < w; x++){
+					dst[offset++] = getValue( x0+x, y0+y, z0+z );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Puts the w x h x d box starting at (x0,y0,z0) into dst, x fastest, advancing its position.
+	 */
+	public default void getRegion( int x0, int y0, int z0, int w, int h, int d, FloatBuffer dst ){
+		if( dst.remaining() < (long)w*h*d ) throw new BufferOverflowException();
+		if( dst.hasArray() ){
+			getRegion( x0, y0, z0, w, h, d, dst.array(), dst.arrayOffset()+dst.position() );
+			dst.position( dst.position()+w*h*d );
+			return;
+		}
+		float [] slice = new float[w*h];
+		for(int z = 0; z < d; z++){
+			getRegion( x0, y0, z0+z, w, h, 1, slice, 0 );
+			dst.put( slice );
+		}
+	}
+
 	
 	public class Empty extends ScalarField3D.Default {
 		int w,h,d;
@@ -47,6 +80,47 @@ public interface ScalarField3D extends ScalarFieldND {
 		@Override public float getValue(int x, int y, int z) { return default_val; }
 	}
 	
+	/**
+	 * Volume backed by long-indexed storage, so it is not limited to 2^31 voxels.
+	 */
+	public class StorageField extends ScalarField3D.Default {
+		int w,h,d;
+		FloatStorage data;
+		public StorageField( int w, int h, int d ) {
+			this( w, h, d, FloatStorage.allocate( (long)w*h*d ) );
+		}
+		public StorageField( int w, int h, int d, FloatStorage data ) {
+			if( data.size() < (long)w*h*d ) throw new IllegalArgumentException( "Storage too small for " + w + "x" + h + "x" + d + " volume" );
+			this.w = w;
+			this.h = h;
+			this.d = d;
+			this.data = data;
+		}
+		public FloatStorage getStorage() { return data; }
+		@Override public float [] getBackingArray() { 
+			return ( data instanceof FloatStorage.Array ) ? ((FloatStorage.Array)data).getArray() : null;
+		}
+		@Override public int getWidth()  {	return w; }
+		@Override public int getHeight() {	return h; }
+		@Override public int getDepth()  {	return d; }
+		@Override public float getValue(int x, int y, int z) { return data.get( ((long)z*h + y)*w + x ); }
+		public void setValue(int x, int y, int z, float v) { data.set( ((long)z*h + y)*w + x, v ); }
+
+		@Override
+		public void getRegion( int x0, int y0, int z0, int rw, int rh, int rd, float [] dst, int offset ){
+			for(int z = 0; z < rd; z++){
+				if( x0 == 0 && rw == w ){
+					data.get( ((long)(z0+z)*h + y0)*w, dst, offset, rw*rh );
+					offset += rw*rh;
+					continue;
+				}
+				for(int y = 0; y < rh; y++, offset += rw){
+					data.get( ((long)(z0+z)*h + y0+y)*w + x0, dst, offset, rw );
+				}
+			}
+		}
+	}
+	
 	public abstract class Default extends ScalarFieldND.Default implements ScalarField3D {
 
 		protected Default( ){ }
@@ -54,7 +128,13 @@ public interface ScalarField3D extends ScalarFieldND {
 		
 		@Override
 		public int getSize() {
-			return getWidth()*getHeight()*getDepth();
+			// fail loudly rather than wrapping around for volumes over 2^31 voxels
+			return Math.toIntExact( getSizeLong() );
+		}
+
+		@Override
+		public long getSizeLong() {
+			return (long)getWidth()*getHeight()*getDepth();
 		}
 
 		@Override
@@ -22,11 +22,23 @@ package usf.saav.scalarfield;
 import java.io.IOException;
 
 import usf.saav.common.BasicObject;
+import usf.saav.common.data.FloatStorage;
 
 public interface ScalarFieldND {
 
 	public int   getSize( );
 	public float getValue( int nodeID );
+
+	/**
+	 * Element count as a long, for fields that may exceed 2^31 elements.
+	 */
+	public default long getSizeLong( ){ return getSize(); }
+
+	/**
+	 * Array holding the field's values in index order (x fastest), or null if
+	 * the field is not backed by one. Callers must not modify it.
+	 */
+	public default float [] getBackingArray( ){ return null; }
 	
 
 	
@@ -67,6 +79,36 @@ public interface ScalarFieldND {
 			return new double[]{min,max};
 		}
 		
+		/**
+		 * Copies the field into dst in index order, a slice or row at a time.
+		 */
+		public static void copyTo( ScalarFieldND sf, FloatStorage dst ){
+			float [] arr = sf.getBackingArray();
+			if( arr != null ){
+				dst.set( 0, arr, 0, sf.getSize() );
+			}
+			else if( sf instanceof ScalarField3D ){
+				ScalarField3D vol = (ScalarField3D)sf;
+				int w = vol.getWidth(), h = vol.getHeight();
+				float [] buf = new float[w*h];
+				for(int z = 0; z < vol.getDepth(); z++){
+					vol.getRegion( 0, 0, z, w, h, 1, buf, 0 );
+					dst.set( (long)z*buf.length, buf, 0, buf.length );
+				}
+			}
+			else if( sf instanceof ScalarField2D ){
+				ScalarField2D img = (ScalarField2D)sf;
+				float [] buf = new float[img.getWidth()*img.getHeight()];
+				img.getRegion( 0, 0, img.getWidth(), img.getHeight(), buf, 0 );
+				dst.set( 0, buf, 0, buf.length );
+			}
+			else {
+				for(int i = 0; i < sf.getSize(); i++){
+					dst.set( i, sf.getValue(i) );
+				}
+			}
+		}
+
 		public static boolean isValidField(ScalarFieldND sf) {
 		    int validCount = 0;
 		    for (int i = 0; i < sf.getSize(); i++) {
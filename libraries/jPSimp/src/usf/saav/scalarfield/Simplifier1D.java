@@ -22,6 +22,7 @@ package usf.saav.scalarfield;
 import usf.saav.common.monitoredvariables.Callback;
 import usf.saav.mesh.Mesh;
 import usf.saav.topology.PseudoContourTree;
+import usf.saav.topology.SimplificationMetric;
 
 public class Simplifier1D extends SimplifierND implements ScalarField1D {
 
@@ -33,7 +34,16 @@ public class Simplifier1D extends SimplifierND implements ScalarField1D {
     }
     public Simplifier1D(ScalarField1D sf, PseudoContourTree ct, Mesh cl, 
             float simplification, String metric, boolean runImmediately, boolean verbose ) {
-        super(sf, ct, cl, simplification, metric, runImmediately);
+        this( sf, ct, cl, simplification, SimplificationMetric.get(metric), runImmediately, verbose );
+    }
+    public Simplifier1D(ScalarField1D sf, PseudoContourTree ct, Mesh cl, 
+            float simplification, SimplificationMetric metric, boolean runImmediately, boolean verbose ) {
+        super(sf, ct, cl, simplification, metric, runImmediately, verbose);
+        this.sf = sf;
+    }
+    public Simplifier1D(ScalarField1D sf, PseudoContourTree ct, Mesh cl, 
+            float [] levels, SimplificationMetric metric, boolean runImmediately, boolean verbose ) {
+        super(sf, ct, cl, levels, metric, runImmediately, verbose);
         this.sf = sf;
     }
 
@@ -23,6 +23,7 @@ package usf.saav.scalarfield;
 import usf.saav.common.monitoredvariables.Callback;
 import usf.saav.mesh.Mesh;
 import usf.saav.topology.PseudoContourTree;
+import usf.saav.topology.SimplificationMetric;
 
 public class Simplifier2D extends SimplifierND implements ScalarField2D {
 
@@ -34,7 +35,16 @@ public class Simplifier2D extends SimplifierND implements ScalarField2D {
     }
     public Simplifier2D(ScalarField2D sf, PseudoContourTree ct, Mesh cl, 
             float simplification, String metric, boolean runImmediately, boolean verbose ) {
-        super(sf, ct, cl, simplification, metric, runImmediately);
+        this( sf, ct, cl, simplification, SimplificationMetric.get(metric), runImmediately, verbose );
+    }
+    public Simplifier2D(ScalarField2D sf, PseudoContourTree ct, Mesh cl, 
+            float simplification, SimplificationMetric metric, boolean runImmediately, boolean verbose ) {
+        super(sf, ct, cl, simplification, metric, runImmediately, verbose);
+        this.sf = sf;
+    }
+    public Simplifier2D(ScalarField2D sf, PseudoContourTree ct, Mesh cl, 
+            float [] levels, SimplificationMetric metric, boolean runImmediately, boolean verbose ) {
+        super(sf, ct, cl, levels, metric, runImmediately, verbose);
         this.sf = sf;
     }
 
@@ -22,6 +22,7 @@ package usf.saav.scalarfield;
 import usf.saav.common.monitoredvariables.Callback;
 import usf.saav.mesh.Mesh;
 import usf.saav.topology.PseudoContourTree;
+import usf.saav.topology.SimplificationMetric;
 
 public class Simplifier3D extends SimplifierND implements ScalarField3D {
 
@@ -35,14 +36,23 @@ public class Simplifier3D extends SimplifierND implements ScalarField3D {
     
     public Simplifier3D(ScalarField3D sf, PseudoContourTree ct, Mesh cl, 
             float simplification, String metric, boolean runImmediately, boolean verbose ) {
-        super(sf, ct, cl, simplification, metric, runImmediately);
+        this( sf, ct, cl, simplification, SimplificationMetric.get(metric), runImmediately, verbose );
+    }
+    public Simplifier3D(ScalarField3D sf, PseudoContourTree ct, Mesh cl, 
+            float simplification, SimplificationMetric metric, boolean runImmediately, boolean verbose ) {
+        super(sf, ct, cl, simplification, metric, runImmediately, verbose);
+        this.sf = sf;
+    }
+    public Simplifier3D(ScalarField3D sf, PseudoContourTree ct, Mesh cl, 
+            float [] levels, SimplificationMetric metric, boolean runImmediately, boolean verbose ) {
+        super(sf, ct, cl, levels, metric, runImmediately, verbose);
         this.sf = sf;
     }
 
     @Override public int getWidth() { return sf.getWidth(); }
     @Override public int getHeight() { return sf.getHeight(); }
     @Override public int getDepth() { return sf.getDepth(); }
-    @Override public float getValue(int x, int y, int z) { return super.getValue( z*getWidth()*getHeight() + y*getWidth() + x ); }
+    @Override public float getValue(int x, int y, int z) { return getStorage().get( ((long)z*getHeight() + y)*getWidth() + x ); }
 
     @Override
     public void setCallback( Object obj, String func_name ) {
@@ -19,29 +19,42 @@
  */
 package usf.saav.scalarfield;
  
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 
+import usf.saav.common.ParallelX;
+import usf.saav.common.data.FloatStorage;
 import usf.saav.common.monitoredvariables.Callback;
 import usf.saav.mesh.Mesh;
 import usf.saav.mesh.Mesh.Vertex;
 import usf.saav.topology.JoinTreeNode;
 import usf.saav.topology.PseudoContourTree;
+import usf.saav.topology.SimplificationMetric;
 import usf.saav.topology.TopoTreeNode;
 import usf.saav.topology.TopoTreeNode.NodeType;
 
 public abstract class SimplifierND extends ScalarFieldND.Default implements ScalarFieldND, Runnable {
 
+	private static final int PARALLEL_MIN_PRUNES = 64;
+
 	private ScalarFieldND sf;
 	private PseudoContourTree ct;
 	private Mesh cl;
-	private float simplification;
-	private String metric;
+	private float [] levels;
+	private SimplificationMetric metric;
 
-	private float [] img;
+	private FloatStorage img;
+	private FloatStorage [] results;
+	private int selected;
 
 	private boolean hasRun = false;
 
@@ -55,11 +68,29 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
 
 	public SimplifierND( ScalarFieldND sf, PseudoContourTree ct, Mesh cl, 
 	        float simplification, String metric, boolean runImmediately, boolean verbose ){
+		this( sf, ct, cl, simplification, SimplificationMetric.get(metric), runImmediately, verbose );
+	}
+
+	public SimplifierND( ScalarFieldND sf, PseudoContourTree ct, Mesh cl, 
+	        float simplification, SimplificationMetric metric, boolean runImmediately, boolean verbose ){
+		this( sf, ct, cl, new float[]{ simplification }, metric, runImmediately, verbose );
+	}
+
+	/**
+	 * Simplifies to several levels at once. Each level continues pruning from
+	 * the previous one, so levels must be in ascending order. The last level
+	 * is selected when the run completes.
+	 */
+	public SimplifierND( ScalarFieldND sf, PseudoContourTree ct, Mesh cl, 
+	        float [] levels, SimplificationMetric metric, boolean runImmediately, boolean verbose ){
 		super( verbose );
+		for(int i = 1; i < levels.length; i++){
+			if( levels[i] < levels[i-1] ) throw new IllegalArgumentException( "Simplification levels must be ascending" );
+		}
 		this.sf = sf;
 		this.ct = ct;
 		this.cl = cl;
-		this.simplification = simplification;
+		this.levels = levels.clone();
 		this.metric = metric;
 		if( runImmediately ) run( );
 	}
@@ -70,7 +101,26 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
 	public ScalarFieldND			getScalarField( ){  	return sf; }
 
 	@Override public int getSize() {	return sf.getSize();	}
-	@Override public float getValue(int idx) { 	return img[idx]; }
+	@Override public long getSizeLong() {	return sf.getSizeLong();	}
+	@Override public float getValue(int idx) { 	return img.get(idx); }
+
+	/**
+	 * The simplified values, long-indexed in the same order as the input field.
+	 */
+	public FloatStorage getStorage( ){ return img; }
+	public FloatStorage getStorage( int level ){ return results[level]; }
+
+	public int   getLevelCount( ){ return levels.length; }
+	public float getLevel( int level ){ return levels[level]; }
+	public int   getSelectedLevel( ){ return selected; }
+
+	/**
+	 * Makes getValue() and getStorage() return the result for the given level.
+	 */
+	public void selectLevel( int level ){
+		selected = level;
+		img = results[level];
+	}
 
 	public abstract void setCallback( Object obj, String func_name );
 
@@ -85,35 +135,16 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
 		print_info_message("Building Simplification");
 
 		// Copy the existing field
-		img = new float[sf.getSize()];
-		for(int i = 0; i < img.length; i++){
-			img[i] = sf.getValue(i);
-		}
+		img = FloatStorage.allocate( sf.getSizeLong() );
+		ScalarFieldND.Default.copyTo( sf, img );
 
-		Queue<TopoTreeNode> workList;
-		
-		switch (this.metric) {
-            case "persistence":
-                workList = new PriorityQueue<TopoTreeNode>( 
-                        sf.getSize(), 
-                        new TopoTreeNode.CompareSimplePersistenceAscending()
-                        );
-                break;
-            case "volume":
-                workList = new PriorityQueue<TopoTreeNode>( 
-                        sf.getSize(), 
-                        new TopoTreeNode.CompareVolumnAscending()
-                        );
-                break;
-            case "hypervolume":
-                workList = new PriorityQueue<TopoTreeNode>( 
-                        sf.getSize(), 
-                        new TopoTreeNode.CompareHyperVolumnAscending()
-                        );
-                break;
-            default:
-                throw new IllegalArgumentException();
-        }
+		// Prune keys are cached per node, and only refreshed when a node's parent changes
+		final float [] keys = metric.getPruneKeys( ct );
+		Map<TopoTreeNode,Integer> nodeIndex = new IdentityHashMap<TopoTreeNode,Integer>();
+		for(int i = 0; i < ct.size(); i++){
+			nodeIndex.put( ct.getNode(i), i );
+		}
+		Queue<Integer> workList = new PriorityQueue<Integer>( Math.max( 1, ct.size() ), new KeyComparatorAscending( keys ) );
 
 		// Simplify the field, component by component
 		for(int i = 0; i < ct.size(); i++){
@@ -124,38 +155,54 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
 //    			        System.out.println("Tree leaves: "+n.getPosition()+
 //    			                ":"+Math.round(n.getSimplePersistence()*10000)+
 //    			                ":"+Math.round(n.getValue()*10000));
-    				    workList.add(n);
+    				    workList.add(i);
     		            break;
     			    default:
     			        break;
     			}
 		}
 		
-		System.out.println("Beginning removal...");
+		if( isVerbose() ) System.out.println("Beginning removal...");
 		
+		// The field updates only depend on the mesh and on each (leaf, parent) pair,
+		// so prune the tree first and apply the updates afterwards.
+		results = new FloatStorage[levels.length];
+		List<TopoTreeNode[]> prunes = new ArrayList<TopoTreeNode[]>();
 		int num_simplified = 0;
-		while (num_simplified < simplification * ct.getNumLeaves()) {
-//          System.out.println("Legal Tree: "+ct.checkTree());
-		    TopoTreeNode n = workList.poll();
-		    if (!n.hasParent()) {
-                break;
-            }
-//		    System.out.println("Nodes to remove: "+n.getPosition()+
-//                    ":"+Math.round(n.getSimplePersistence()*10000)+
-//                    ":"+Math.round(n.getValue()*10000));
-		    TopoTreeNode p = n.getParent();
-		    pruneLeaf(n, p);
-	        float volumeChange = modifyScalarField(n, p);
-	        System.out.println(Math.round(volumeChange*10000));
-	        if (p.hasParent() && p.getChildCount() == 1) {
-	            TopoTreeNode newVertex = reduceVertex(n, p, volumeChange);
-	            if (workList.remove(newVertex) && 
-	                    (newVertex.getType() == NodeType.LEAF_MAX || newVertex.getType() == NodeType.LEAF_MIN)) {
-                    workList.add(newVertex);
+		boolean exhausted = false;
+		for( int l = 0; l < levels.length; l++ ){
+			prunes.clear();
+			while (!exhausted && num_simplified < levels[l] * ct.getNumLeaves()) {
+//              System.out.println("Legal Tree: "+ct.checkTree());
+			    TopoTreeNode n = ct.getNode( workList.poll() );
+			    if (!n.hasParent()) {
+			        exhausted = true;
+	                break;
 	            }
-	        }
-	        num_simplified++;
+//			    System.out.println("Nodes to remove: "+n.getPosition()+
+//                        ":"+Math.round(n.getSimplePersistence()*10000)+
+//                        ":"+Math.round(n.getValue()*10000));
+			    TopoTreeNode p = n.getParent();
+			    pruneLeaf(n, p);
+			    prunes.add( new TopoTreeNode[]{ n, p } );
+		        if (p.hasParent() && p.getChildCount() == 1) {
+		            TopoTreeNode newVertex = reduceVertex(n, p);
+		            Integer newIdx = nodeIndex.get(newVertex);
+		            if (workList.remove(newIdx) && 
+		                    (newVertex.getType() == NodeType.LEAF_MAX || newVertex.getType() == NodeType.LEAF_MIN)) {
+		                keys[newIdx] = metric.getPruneKey(newVertex);
+	                    workList.add(newIdx);
+		            }
+		        }
+		        num_simplified++;
+			}
+			
+			modifyScalarField( prunes );
+			
+			// the next level keeps pruning this field, so earlier levels get a copy
+			results[l] = ( l == levels.length-1 ) ? img : FloatStorage.copyOf( img );
 		}
+		selected = levels.length-1;
 
 		print_info_message("Build Complete");
 
@@ -179,7 +226,7 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
 	    n.setValid(false);
 	}
 	
-	private TopoTreeNode reduceVertex(TopoTreeNode n, TopoTreeNode p, float volumeChange) {
+	private TopoTreeNode reduceVertex(TopoTreeNode n, TopoTreeNode p) {
 	    JoinTreeNode sbl = p.getChild(0);
         JoinTreeNode np = (JoinTreeNode) p.getParent();
         sbl.setParent(np);
@@ -193,12 +240,79 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
         return sbl;
 	}
 	
-	private float modifyScalarField(TopoTreeNode n, TopoTreeNode p) {
+	/**
+	 * Applies the field updates of the pruned (leaf, parent) pairs. Large batches
+	 * are applied in waves of consecutive prunes whose parents differ and whose
+	 * flood regions are disjoint, so the result is identical to the serial order.
+	 */
+	private void modifyScalarField( List<TopoTreeNode[]> prunes ) {
+		
+		if( prunes.size() < PARALLEL_MIN_PRUNES || ParallelX.getThreadCount() == 1 ){
+			for( TopoTreeNode [] np : prunes ){
+				float volumeChange = modifyScalarField( floodRegion(np[0], np[1]), np[0], np[1] );
+				if( isVerbose() ) System.out.println(Math.round(volumeChange*10000));
+			}
+			return;
+		}
+		
+		final int total = prunes.size();
+		final int window = ParallelX.getThreadCount()*4;
+		final List<Set<Integer>> regions = new ArrayList<Set<Integer>>( Collections.nCopies( total, (Set<Integer>)null ) );
+		final float [] volumeChange = new float[total];
+		int [] compWave = new int[cl.size()];
+		Arrays.fill( compWave, -1 );
+		Set<TopoTreeNode> waveParents = Collections.newSetFromMap( new IdentityHashMap<TopoTreeNode,Boolean>() );
+		
+		int next = 0;
+		for( int wave = 0; next < total; wave++ ){
+			
+			// flood regions for the look-ahead window
+			final int start = next;
+			final int end   = Math.min( total, next+window );
+			ParallelX.forEach( end-start, (i) -> {
+				if( regions.get(start+i) == null ){
+					TopoTreeNode [] np = prunes.get(start+i);
+					regions.set( start+i, floodRegion( np[0], np[1] ) );
+				}
+			});
+			
+			// longest prefix of independent prunes
+			waveParents.clear();
+			int waveEnd = start;
+			while( waveEnd < end ){
+				TopoTreeNode [] np = prunes.get(waveEnd);
+				boolean independent = waveParents.add( np[1] );
+				if( independent ){
+					for( int c : regions.get(waveEnd) ){
+						if( compWave[c] == wave ){ independent = false; break; }
+						compWave[c] = wave;
+					}
+				}
+				if( !independent && waveEnd > start ) break;
+				waveEnd++;
+			}
+			
+			final int wend = waveEnd;
+			ParallelX.forEach( wend-start, (i) -> {
+				TopoTreeNode [] np = prunes.get(start+i);
+				volumeChange[start+i] = modifyScalarField( regions.get(start+i), np[0], np[1] );
+				regions.set( start+i, null );
+			});
+			for( int i = start; i < wend && isVerbose(); i++ ){
+				System.out.println(Math.round(volumeChange[i]*10000));
+			}
+			next = wend;
+		}
+	}
+	
+	/**
+	 * Components flooded from the leaf n up to its parent p. Only reads the mesh.
+	 */
+	private Set<Integer> floodRegion(TopoTreeNode n, TopoTreeNode p) {
 
         Set<Integer>   compUsed = new HashSet<Integer>();
         Queue<Integer> workList = null;
         Set<Integer>   pModify  = new HashSet<Integer>();
-        float volumeChange = 0;
         
         if( n.getType() == NodeType.LEAF_MIN ) 
             workList = new PriorityQueue<Integer>( 11, new ComponentComparatorAscending() );
@@ -227,20 +341,24 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
             }
         }
         
-//        System.out.println("workList: "+workList.size());
-//        System.out.println("pModify: "+pModify.size());
+        return pModify;
+	}
+	
+	private float modifyScalarField(Set<Integer> pModify, TopoTreeNode n, TopoTreeNode p) {
+        float volumeChange = 0;
         
         // modify values
         for( Integer c : pModify ){
             Vertex cur = cl.get(c);
             for( int pos : cur.positions() ) {
+                float v = img.get(pos);
                 if( n.getType() == NodeType.LEAF_MIN ) {
-                    volumeChange += Math.abs( img[pos] - p.getValue() );
-                    img[pos] = Math.max( img[pos], p.getValue() );
+                    volumeChange += Math.abs( v - p.getValue() );
+                    img.set( pos, Math.max( v, p.getValue() ) );
                 }
                 if( n.getType() == NodeType.LEAF_MAX ) {
-                    volumeChange += Math.abs( img[pos] - p.getValue() );
-                    img[pos] = Math.min( img[pos], p.getValue() );
+                    volumeChange += Math.abs( v - p.getValue() );
+                    img.set( pos, Math.min( v, p.getValue() ) );
                 }
             }
         }
@@ -256,6 +374,16 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
         }
 	}
 
+	static class KeyComparatorAscending implements Comparator<Integer>{
+		private float [] keys;
+		KeyComparatorAscending( float [] keys ){ this.keys = keys; }
+		@Override public int compare(Integer o1, Integer o2) {
+			if( keys[o1] > keys[o2] ) return  1;
+			if( keys[o1] < keys[o2] ) return -1;
+			return 0;
+		}
+	}
+
 	class ComponentComparatorAscending implements Comparator<Integer>{
 		@Override public int compare(Integer o1, Integer o2) {
 			if( cl.get(o1).value() < cl.get(o2).value() ) return -1;
@@ -274,16 +402,16 @@ public abstract class SimplifierND extends ScalarFieldND.Default implements Scal
 
 	class CurrentFieldValueAscending implements Comparator<Integer>{
 		@Override public int compare(Integer o1, Integer o2) {
-			if( img[o1] < img[o2] ) return -1;
-			if( img[o1] > img[o2] ) return  1;
+			if( img.get(o1) < img.get(o2) ) return -1;
+			if( img.get(o1) > img.get(o2) ) return  1;
 			return 0;
 		}
 	}
 
 	class CurrentFieldValueDescending implements Comparator<Integer>{
 		@Override public int compare(Integer o1, Integer o2) {
-			if( img[o1] < img[o2] ) return  1;
-			if( img[o1] > img[o2] ) return -1;
+			if( img.get(o1) < img.get(o2) ) return  1;
+			if( img.get(o1) > img.get(o2) ) return -1;
 			return 0;
 		}
 	}
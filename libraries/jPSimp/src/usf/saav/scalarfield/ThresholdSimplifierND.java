@@ -0,0 +1,192 @@
+/*
+ *     jPSimp - Persistence calculation and simplification of scalar fields.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.scalarfield;
+
+import java.util.Arrays;
+
+import usf.saav.common.ParallelX;
+import usf.saav.common.algorithm.ArrayDisjointSet;
+import usf.saav.common.data.FloatStorage;
+import usf.saav.common.monitoredvariables.Callback;
+import usf.saav.mesh.Mesh;
+import usf.saav.topology.VertexOrder;
+
+/**
+ * Persistence simplification for a fixed threshold. Instead of flooding from
+ * every cancelled leaf, the merge and split tree sweeps label each mesh vertex
+ * with the arc (extremum) that owns it, cancel arcs whose persistence is at or
+ * below the threshold, and then flatten the field in a single pass.
+ * Minima are raised first, then maxima are lowered.
+ */
+public abstract class ThresholdSimplifierND extends ScalarFieldND.Default implements ScalarFieldND, Runnable {
+
+	private ScalarFieldND sf;
+	private Mesh cl;
+	private float threshold;
+
+	private FloatStorage img;
+
+	private boolean hasRun = false;
+
+	protected Callback cb = null;
+
+
+	public ThresholdSimplifierND( ScalarFieldND sf, Mesh cl, float threshold, boolean runImmediately ){
+		this( sf, cl, threshold, runImmediately, true );
+	}
+
+	public ThresholdSimplifierND( ScalarFieldND sf, Mesh cl, float threshold, boolean runImmediately, boolean verbose ){
+		super( verbose );
+		this.sf = sf;
+		this.cl = cl;
+		this.threshold = threshold;
+		if( runImmediately ) run( );
+	}
+
+
+	public Mesh			getComponentList(){ 	return cl; }
+	public ScalarFieldND			getScalarField( ){  	return sf; }
+	public float		getThreshold( ){		return threshold; }
+	public FloatStorage	getStorage( ){			return img; }
+
+	@Override public int getSize() {	return sf.getSize();	}
+	@Override public long getSizeLong() {	return sf.getSizeLong();	}
+	@Override public float getValue(int idx) { 	return img.get(idx); }
+
+	public abstract void setCallback( Object obj, String func_name );
+
+
+	@Override
+	public void run() {
+		if( hasRun ){
+			return;
+		}
+
+		print_info_message("Building Simplification");
+
+		// Copy the existing field
+		img = FloatStorage.allocate( sf.getSizeLong() );
+		ScalarFieldND.Default.copyTo( sf, img );
+
+		// minima are cancelled first, maxima are then measured on the raised values
+		final float [] values = VertexOrder.getValues( cl );
+		final float [] raise = flattenLevels( values, VertexOrder.ascending( values ), true );
+		for(int v = 0; v < values.length; v++){
+			if( !Float.isNaN(raise[v]) ) values[v] = Math.max( values[v], raise[v] );
+		}
+		final float [] lower = flattenLevels( values, VertexOrder.descending( values ), false );
+
+		// single pass over the field, vertices own disjoint positions
+		ParallelX.forEachChunk( cl.size(), ParallelX.getChunkCount(cl.size(), 1<<12), (c,start,end) -> {
+			for(int v = start; v < end; v++){
+				if( Float.isNaN(raise[v]) && Float.isNaN(lower[v]) ) continue;
+				for( int pos : cl.get(v).positions() ){
+					float val = img.get(pos);
+					if( !Float.isNaN(raise[v]) ) val = Math.max( val, raise[v] );
+					if( !Float.isNaN(lower[v]) ) val = Math.min( val, lower[v] );
+					img.set( pos, val );
+				}
+			}
+		});
+
+		print_info_message("Build Complete");
+
+		hasRun = true;
+		if( cb != null ){
+			cb.call( this );
+		}
+	}
+
+
+	/**
+	 * Sweeps the mesh vertices in the given order, labeling each with its
+	 * owning arc. When two arcs meet, the younger one dies at that value and
+	 * is cancelled if its persistence is within the threshold.
+	 * @return per vertex the value it is flattened to, or NaN if untouched.
+	 */
+	private float [] flattenLevels( float [] values, int [] order, boolean ascending ){
+		int n = values.length;
+		float sign = ascending ? 1 : -1;
+
+		ArrayDisjointSet dj = new ArrayDisjointSet( n );
+		int [] rank  = new int[n];		// sweep position of each vertex
+		int [] label = new int[n];		// owning arc of each vertex
+		int [] arc   = new int[n];		// owning arc of each set root
+		int [] into  = new int[n];		// arc that a dead arc merged into
+		float [] death = new float[n];	// saddle value of each cancelled arc
+		int [] dead  = new int[n];		// arcs in order of death
+		int deadN = 0;
+		boolean [] done = new boolean[n];
+		Arrays.fill( death, Float.NaN );
+
+		int [] nbrArcs = new int[16];
+		for( int r = 0; r < n; r++ ){
+			int v = order[r];
+			rank[v] = r;
+			float val = values[v];
+
+			// resolve neighbor arcs before any union changes the roots
+			int [] nbrs = cl.get(v).neighbors();
+			if( nbrArcs.length < nbrs.length ) nbrArcs = new int[nbrs.length];
+			int cnt = 0;
+			for( int nb : nbrs ){
+				if( done[nb] ) nbrArcs[cnt++] = arc[ dj.find(nb) ];
+			}
+
+			int own = -1;
+			for( int i = 0; i < cnt; i++ ){
+				int a = nbrArcs[i];
+				if( own == -1 ){ own = a; continue; }
+				if( own == a ) continue;
+				// the elder arc has the lower (upper for maxima) birth value, ties go to the earlier sweep position
+				int young = ( rank[a] > rank[own] ) ? a : own;
+				int old   = ( young == a ) ? own : a;
+				if( sign*(val - values[young]) <= threshold ) death[young] = val;
+				into[young] = old;
+				dead[deadN++] = young;
+				own = old;
+			}
+			if( own == -1 ) own = v;
+
+			for( int nb : nbrs ){
+				if( done[nb] ) dj.union( v, nb );
+			}
+			label[v] = own;
+			arc[ dj.find(v) ] = own;
+			done[v] = true;
+		}
+
+		// cancelled arcs flatten to the level of the last cancelled arc they merge into
+		float [] level = new float[n];
+		Arrays.fill( level, Float.NaN );
+		for( int i = deadN-1; i >= 0; i-- ){
+			int a = dead[i];
+			if( Float.isNaN(death[a]) ) continue;
+			level[a] = Float.isNaN( level[into[a]] ) ? death[a] : level[into[a]];
+		}
+
+		float [] ret = new float[n];
+		for( int v = 0; v < n; v++ ){
+			ret[v] = level[ label[v] ];
+		}
+		return ret;
+	}
+
+}
@@ -20,6 +20,7 @@
 package usf.saav.topology;
 
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Stack;
 
 import usf.saav.mesh.Mesh;
@@ -43,7 +44,7 @@ public abstract class AugmentedJoinTree extends AugmentedJoinTreeBase implements
 		print_info_message( "Building tree..." );
 
 		// Build a join tree.
-		JoinTree jt = new JoinTree( cl, comparator );
+		JoinTree jt = JoinTree.create( cl, comparator );
 		jt.run();
 
 	    head = simpleProcessTree(jt.getRoot());
@@ -203,6 +204,36 @@ public abstract class AugmentedJoinTree extends AugmentedJoinTreeBase implements
         }
     }
     
+    /**
+     * Pairs each branch with the node where it joins an elder branch (elder
+     * rule), so getPersistence() is defined for every leaf. Nodes are stored
+     * children first, so one pass suffices. Exact when every saddle joins two
+     * branches, as in 1D fields.
+     * @return the leaf of the eldest branch, which remains unpaired.
+     */
+    public JoinTreeNode calculatePersistencePairs() {
+        IdentityHashMap<JoinTreeNode,JoinTreeNode> elder = new IdentityHashMap<JoinTreeNode,JoinTreeNode>();
+        for (JoinTreeNode curr : nodes) {
+            JoinTreeNode oldest = curr;
+            for (JoinTreeNode child : curr.getChildren()) {
+                JoinTreeNode younger = elder.get(child);
+                if (oldest == curr) {
+                    oldest = younger;
+                    continue;
+                }
+                if (comparator.compare(younger, oldest) < 0) {
+                    JoinTreeNode tmp = oldest;
+                    oldest = younger;
+                    younger = tmp;
+                }
+                younger.setPartner(curr);
+                curr.setPartner(younger);
+            }
+            elder.put(curr, oldest);
+        }
+        return ( head == null ) ? null : elder.get(head);
+    }
+    
     protected void calculateMaxVolumn(JoinTreeNode head) {
         int volumn = Integer.MIN_VALUE;
         float hypervolumn = Float.MIN_VALUE;
@@ -26,6 +26,7 @@ import java.util.Queue;
 
 import usf.saav.common.algorithm.ArrayDisjointSet;
 import usf.saav.mesh.Mesh;
+import usf.saav.mesh.PathMesh;
 import usf.saav.mesh.ScalarFieldMesh;
 import usf.saav.scalarfield.ScalarField2D;
 
@@ -35,7 +36,7 @@ public class JoinTree implements Runnable {
 	private   Comparator<? super JoinTreeNode> comparator;
 	private   Mesh sf;
 	private   int width;
-	private   JoinTreeNode head;
+	protected JoinTreeNode head;
 	protected boolean operationComplete = false;
 
 	public JoinTree( Mesh sf ) {
@@ -49,6 +50,17 @@ public class JoinTree implements Runnable {
 	}
 
 	
+	/**
+	 * Join tree for the mesh, using the linear-time builder for 1D paths.
+	 */
+	public static JoinTree create( Mesh sf, Comparator<? super JoinTreeNode> comparator ){
+		if( sf instanceof PathMesh ){
+			if( comparator instanceof JoinTreeNode.ComparatorValueAscending )  return new JoinTree1D( (PathMesh)sf, true );
+			if( comparator instanceof JoinTreeNode.ComparatorValueDescending ) return new JoinTree1D( (PathMesh)sf, false );
+		}
+		return new JoinTree( sf, comparator );
+	}
+
 	public JoinTreeNode getRoot( ){
 		if( !operationComplete ) return null;
 		return head;
@@ -69,12 +81,6 @@ public class JoinTree implements Runnable {
 		JoinTreeNode [] grid;
 		grid = new JoinTreeNode[width];
 
-		// We first order the points for adding to the tree.
-		Queue< JoinTreeNode > tq = new PriorityQueue< JoinTreeNode >( width, comparator );
-		for(int i = 0; i < sf.size(); i++ ){
-			tq.add( new JoinTreeNode( i, sf.get(i).value(), sf.get(i).size(), sf.get(i).integral() ) );
-		}
-		
 		// Disjoint Set used to mark which set a points belongs to
 		ArrayDisjointSet dj = new ArrayDisjointSet( sf.size() );
 		
@@ -82,11 +88,28 @@ public class JoinTree implements Runnable {
 		boolean [] bm = new boolean[sf.size()];
 		Arrays.fill(bm, false );
 		
-		// start popping elements off the of the list
-		while( tq.size() > 0 ){
-			head = tq.poll();
-			init_mergeWithNeighbors( grid, head, sf, bm, dj );
-			bm[head.getPosition()] = true;
+		// We first order the points for adding to the tree.
+		int [] order = VertexOrder.getOrder( sf, comparator );
+		if( order != null ){
+			for( int i : order ){
+				head = new JoinTreeNode( i, sf.get(i).value(), sf.get(i).size(), sf.get(i).integral() );
+				init_mergeWithNeighbors( grid, head, sf, bm, dj );
+				bm[i] = true;
+			}
+		}
+		else {
+			// Custom comparator, fall back to a priority queue
+			Queue< JoinTreeNode > tq = new PriorityQueue< JoinTreeNode >( width, comparator );
+			for(int i = 0; i < sf.size(); i++ ){
+				tq.add( new JoinTreeNode( i, sf.get(i).value(), sf.get(i).size(), sf.get(i).integral() ) );
+			}
+			
+			// start popping elements off the of the list
+			while( tq.size() > 0 ){
+				head = tq.poll();
+				init_mergeWithNeighbors( grid, head, sf, bm, dj );
+				bm[head.getPosition()] = true;
+			}
 		}
 		
 		operationComplete = true;
@@ -0,0 +1,222 @@
+/*
+ *     jPSimp - Persistence calculation and simplification of scalar fields.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import usf.saav.mesh.ConnectedComponentMesh;
+import usf.saav.mesh.PathMesh;
+import usf.saav.mesh.ScalarFieldMesh;
+import usf.saav.scalarfield.ScalarField1D;
+import usf.saav.scalarfield.Simplifier1D;
+
+/**
+ * Join tree of a 1D path in O(n). On a path, the component below a vertex on
+ * either side is an interval whose last swept vertex is its largest, so the
+ * join tree is the Cartesian tree of the sweep order and a monotone stack
+ * builds it without sorting or union-find. The result is identical to
+ * JoinTree on the same mesh, including the order of children.
+ */
+public class JoinTree1D extends JoinTree {
+
+	private PathMesh path;
+	private boolean ascending;
+
+	public JoinTree1D( PathMesh path, boolean ascending ){
+		super( path, ascending ? new JoinTreeNode.ComparatorValueAscending() : new JoinTreeNode.ComparatorValueDescending() );
+		this.path = path;
+		this.ascending = ascending;
+	}
+
+	@Override
+	public void run() {
+
+		if( operationComplete ) return;
+
+		int n = path.size();
+		JoinTreeNode [] grid = new JoinTreeNode[n];
+		int [] left  = new int[n];
+		int [] right = new int[n];
+		int [] stack = new int[n];
+		int top = 0, last = -1;
+
+		for( int i = 0; i < n; i++ ){
+			grid[i]  = new JoinTreeNode( i, path.getValue(i), path.getCount(i), path.getIntegral(i) );
+			left[i]  = right[i] = -1;
+
+			// a new segment of the path starts a new tree
+			if( path.getPrev(i) == -1 ) top = 0;
+
+			int below = -1;
+			while( top > 0 && isLater( i, stack[top-1] ) ){
+				below = stack[--top];
+			}
+			left[i] = below;
+			if( top > 0 ) right[ stack[top-1] ] = i;
+			stack[top++] = i;
+
+			if( last == -1 || isLater( i, last ) ) last = i;
+		}
+
+		// children in neighbor order, the previous vertex first
+		for( int i = 0; i < n; i++ ){
+			int c0 = left[i], c1 = right[i];
+			if( c0 != -1 ){ grid[i].addChild( grid[c0] ); grid[c0].setParent( grid[i] ); }
+			if( c1 != -1 ){ grid[i].addChild( grid[c1] ); grid[c1].setParent( grid[i] ); }
+		}
+
+		// the last vertex of the sweep, as in JoinTree
+		head = ( last == -1 ) ? null : grid[last];
+		operationComplete = true;
+	}
+
+	/**
+	 * True if vertex a is swept after vertex b.
+	 */
+	private boolean isLater( int a, int b ){
+		float va = path.getValue(a), vb = path.getValue(b);
+		if( ascending ) return va > vb || ( va == vb && a < b );
+		return va < vb || ( va == vb && a > b );
+	}
+
+	/**
+	 * Checks random spectra, with ties and invalid samples, against the
+	 * general path: trees (nodes, volumes, child order), mesh neighbors and
+	 * Simplifier1D output must match a ConnectedComponentMesh over a
+	 * ScalarFieldMesh, and persistence pairs must match a union-find
+	 * reference.
+	 */
+	public static void main( String [] args ){
+
+		int trials = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 3000;
+		Random rand = new Random( 5 );
+		int treeBad = 0, simpBad = 0, pairBad = 0;
+
+		for( int t = 0; t < trials; t++ ){
+			int n = 1 + rand.nextInt( t < trials/2 ? 40 : 3000 );
+			int q = 1 + rand.nextInt( t%3 == 0 ? 5 : 1000 );
+			float [] v = new float[n];
+			for( int i = 0; i < n; i++ ){
+				v[i] = ( rand.nextInt(25) == 0 ) ? Float.NaN : rand.nextInt(q) - q/3;
+			}
+
+			ScalarField1D sf = new ScalarField1D.ArrayField( v );
+			ConnectedComponentMesh cm = new ConnectedComponentMesh( new ScalarFieldMesh( sf ) );
+			PathMesh pm = new PathMesh( sf );
+			if( cm.size() < 2 ) continue;
+
+			PseudoContourTree ct0 = new PseudoContourTree( cm, false, false );
+			PseudoContourTree ct1 = new PseudoContourTree( pm, false, false );
+			boolean same = signature(ct0).equals( signature(ct1) );
+			for( int i = 0; same && i < cm.size(); i++ ){
+				same = Arrays.equals( cm.get(i).neighbors(), pm.get(i).neighbors() )
+					&& Arrays.equals( cm.get(i).positions(), pm.get(i).positions() );
+			}
+			if( !same ){ treeBad++; continue; }
+
+			float level = rand.nextFloat();
+			ct0.setSimplificationLevel( level );
+			ct1.setSimplificationLevel( level );
+			Simplifier1D s0 = new Simplifier1D( sf, ct0, cm, level, "persistence", true, false );
+			Simplifier1D s1 = new Simplifier1D( sf, ct1, pm, level, "persistence", true, false );
+			for( int i = 0; i < n; i++ ){
+				if( Float.floatToIntBits( s0.getValue(i) ) != Float.floatToIntBits( s1.getValue(i) ) ){ simpBad++; break; }
+			}
+
+			// distinct values, so the pairs are unique
+			float [] d = new float[n];
+			for( int i = 0; i < n; i++ ) d[i] = 1 + rand.nextFloat();
+			PseudoContourTree pct = new PseudoContourTree( new PathMesh( d ), false, false );
+			pct.calculatePersistencePairs();
+			List<Float> got = new ArrayList<Float>();
+			for( int i = 0; i < pct.size(); i++ ){
+				TopoTreeNode node = pct.getNode(i);
+				boolean leaf = node.getType() == TopoTreeNode.NodeType.LEAF_MIN || node.getType() == TopoTreeNode.NodeType.LEAF_MAX;
+				if( leaf && node.getPartner() != null ) got.add( node.getPersistence() );
+			}
+			Collections.sort( got );
+			if( !got.equals( referencePairs(d) ) ) pairBad++;
+		}
+
+		System.out.println( "JoinTree1D: " + trials + " spectra, tree mismatches " + treeBad + 
+							", simplification mismatches " + simpBad + ", pair mismatches " + pairBad );
+	}
+
+	private static String signature( PseudoContourTree ct ){
+		StringBuilder sb = new StringBuilder();
+		for( int i = 0; i < ct.size(); i++ ){
+			TopoTreeNode node = ct.getNode(i);
+			sb.append( node.getPosition() ).append( ',' ).append( node.getValue() ).append( ',' );
+			sb.append( node.getVolumn() ).append( ',' ).append( node.getAbsoluteHyperVolumn() ).append( ',' );
+			sb.append( node.getType() ).append( ',' ).append( node.hasParent() ? node.getParent().getPosition() : -1 ).append( '[' );
+			for( JoinTreeNode c : node.getChildren() ) sb.append( c.getPosition() ).append( ' ' );
+			sb.append( "]\n" );
+		}
+		return sb.append( ct.getMaxPersistence() + " " + ct.getMaxVolumn() + " " + ct.getMaxHyperVolumn() + " " + ct.getNumLeaves() ).toString();
+	}
+
+	/**
+	 * Sorted non-zero persistences of the minima and maxima of a path by
+	 * union-find (elder rule), plus the global pair for both trees.
+	 */
+	private static List<Float> referencePairs( float [] d ){
+		List<Float> ret = new ArrayList<Float>();
+		int n = d.length;
+		for( int dir = 0; dir < 2; dir++ ){
+			final float sign = ( dir == 0 ) ? 1 : -1;
+			Integer [] order = new Integer[n];
+			for( int i = 0; i < n; i++ ) order[i] = i;
+			Arrays.sort( order, (a,b) -> Float.compare( sign*d[a], sign*d[b] ) );
+
+			int [] parent = new int[n];
+			boolean [] on = new boolean[n];
+			for( int k : order ){
+				on[k] = true;
+				parent[k] = k;
+				for( int nb : new int[]{ k-1, k+1 } ){
+					if( nb < 0 || nb >= n || !on[nb] ) continue;
+					int a = find( parent, k ), b = find( parent, nb );
+					if( a == b ) continue;
+					// roots are the earliest swept vertex of their set
+					boolean aOlder = sign*d[a] < sign*d[b];
+					int young = aOlder ? b : a;
+					ret.add( Math.abs( d[k] - d[young] ) );
+					parent[young] = aOlder ? a : b;
+				}
+			}
+		}
+		float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+		for( float x : d ){ min = Math.min( min, x ); max = Math.max( max, x ); }
+		if( n > 1 ){ ret.add( max-min ); ret.add( max-min ); }
+		ret.removeIf( x -> x == 0f );
+		Collections.sort( ret );
+		return ret;
+	}
+
+	private static int find( int [] parent, int x ){
+		while( parent[x] != x ) x = parent[x] = parent[parent[x]];
+		return x;
+	}
+
+}
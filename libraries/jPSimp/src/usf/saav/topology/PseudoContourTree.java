@@ -38,13 +38,22 @@ public class PseudoContourTree extends BasicObject implements TopoTree {
 	private float max_hypervolumn = 0;
 	private int num_leaves = 0;
 	private float simplify = 0.0f;
-	private String metric = "persistence";
+	private SimplificationMetric metric = SimplificationMetric.PERSISTENCE;
+	private float [] pairKeys;
+	private float max_key = 0;
 	
 	public PseudoContourTree( Mesh sf ){
 		this(sf,false);
 	}
 	
 	public PseudoContourTree( Mesh sf, boolean verbose){
+		this(sf,verbose,true);
+	}
+	
+	/**
+	 * @param summary Print the merge and split tree sizes, independent of verbose.
+	 */
+	public PseudoContourTree( Mesh sf, boolean verbose, boolean summary ){
 		super(verbose);
 		print_info_message("Building Contour Tree");
 		
@@ -64,14 +73,16 @@ public class PseudoContourTree extends BasicObject implements TopoTree {
 			e.printStackTrace();
 		}
 		
-		System.out.println("Merge Tree Nodes: "+mt.size());
-		System.out.println("Merge Tree Max Persistence: "+mt.getMaxPersistence());
-		System.out.println("Merge Tree Max Volumn: "+mt.getMaxVolumn());
-		System.out.println("Merge Tree Max Hyper Volumn: "+mt.getMaxHyperVolumn());
-		System.out.println("Split Tree Nodes: "+st.size());
-		System.out.println("Split Tree Max Persistence: "+st.getMaxPersistence());
-		System.out.println("Split Tree Max Volumn: "+st.getMaxVolumn());
-		System.out.println("Split Tree Max Hyper Volumn: "+st.getMaxHyperVolumn());
+		if( summary ){
+			System.out.println("Merge Tree Nodes: "+mt.size());
+			System.out.println("Merge Tree Max Persistence: "+mt.getMaxPersistence());
+			System.out.println("Merge Tree Max Volumn: "+mt.getMaxVolumn());
+			System.out.println("Merge Tree Max Hyper Volumn: "+mt.getMaxHyperVolumn());
+			System.out.println("Split Tree Nodes: "+st.size());
+			System.out.println("Split Tree Max Persistence: "+st.getMaxPersistence());
+			System.out.println("Split Tree Max Volumn: "+st.getMaxVolumn());
+			System.out.println("Split Tree Max Hyper Volumn: "+st.getMaxHyperVolumn());
+		}
 		
 		max_persistence = Math.max( mt.getMaxPersistence(), st.getMaxPersistence() );
 		max_volumn = Math.max(mt.getMaxVolumn(), st.getMaxVolumn());
@@ -87,13 +98,45 @@ public class PseudoContourTree extends BasicObject implements TopoTree {
 		else{
 			print_error_message("Error finding global min and/or max");
 		}
+		
+		setSimplificationMetric( metric );
 	}
 
 	
+	/**
+	 * Pairs every leaf with the saddle where its branch dies (elder rule), and
+	 * the global minimum with the global maximum. The constructor only pairs
+	 * the tree roots; pairing all leaves defines getPersistence() everywhere,
+	 * as PersistenceSimplifierND needs. Exact for 1D fields.
+	 */
+	public void calculatePersistencePairs( ){
+		JoinTreeNode min = mt.calculatePersistencePairs();
+		JoinTreeNode max = st.calculatePersistencePairs();
+		if( min != null && max != null ){
+			min.setPartner(max);
+			max.setPartner(min);
+		}
+		setSimplificationMetric( metric );
+	}
+	
 	public void setSimplificationLevel( float threshold ){ simplify = threshold; }
-	public void setSimplificationMetric( String metric ){ this.metric = metric; }
+	public void setSimplificationMetric( String metric ){ setSimplificationMetric( SimplificationMetric.get(metric) ); }
 	public float getSimplificationLevel( ){ return simplify; }
-	public String getSimplificationMetric( ){ return metric; }
+	public String getSimplificationMetric( ){ return metric.getName(); }
+	public SimplificationMetric getMetric( ){ return metric; }
+	
+	/**
+	 * Sets the metric and caches its pair key for every node. The keys reflect
+	 * the tree at the time the metric is set.
+	 */
+	public void setSimplificationMetric( SimplificationMetric metric ){
+		this.metric   = metric;
+		this.pairKeys = metric.getPairKeys( this );
+		this.max_key  = metric.getMaximum( this );
+	}
+	
+	public float getPairKey( int i ){ return pairKeys[i]; }
+	public float getMaxKey( ){ return max_key; }
 	
 	public float getMaxPersistence(){ return max_persistence; }
 	public int getMaxVolumn(){ return max_volumn; }
@@ -162,33 +205,15 @@ public class PseudoContourTree extends BasicObject implements TopoTree {
     }
 	
 	public boolean isActive(int i) {
-	    if (metric.equals("persistence"))
-	        return getPersistence(i) > simplify * max_persistence;
-	    else if (metric.equals("volumn"))
-	        return getVolumn(i) > simplify * max_volumn;
-	    else if (metric.equals("hypervolumn"))
-	        return getHyperVolumn(i) > simplify * max_hypervolumn;
-        return false;
+	    return pairKeys[i] > simplify * max_key;
 	}
        
     public boolean isPruning(int i) {
-        if (metric.equals("persistence"))
-            return getSimplePersistence(i) <= simplify * max_persistence;
-        else if (metric.equals("volumn"))
-            return getVolumn(i) <= simplify * max_volumn;
-        else if (metric.equals("hypervolumn"))
-            return getHyperVolumn(i) <= simplify * max_hypervolumn;
-        return false;
+        return isPruning( getNode(i) );
     }
     
     public boolean isPruning(TopoTreeNode n) {
-        if (metric.equals("persistence"))
-            return n.getSimplePersistence() <= simplify * max_persistence;
-        else if (metric.equals("volumn"))
-            return n.getVolumn() <= simplify * max_volumn;
-        else if (metric.equals("hypervolumn"))
-            return n.getHyperVolumn() <= simplify * max_hypervolumn;
-        return false;
+        return metric.getPruneKey(n) <= simplify * max_key;
     }
 
 	public boolean checkTree() {
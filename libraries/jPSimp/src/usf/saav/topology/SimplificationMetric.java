@@ -0,0 +1,150 @@
+/*
+ *     jPSimp - Persistence calculation and simplification of scalar fields.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.topology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measure used to decide which features of a tree are simplified. Each
+ * metric reduces a node to a single float key, so trees and simplifiers can
+ * precompute keys once and compare floats in their inner loops. Custom
+ * metrics implement this interface and may be registered by name for the
+ * command line.
+ */
+public interface SimplificationMetric {
+
+	public String getName( );
+
+	/**
+	 * Key of a leaf for pruning it into its current parent. Smaller keys are
+	 * pruned first.
+	 */
+	public float getPruneKey( TopoTreeNode n );
+
+	/**
+	 * Key of the persistence pair that n belongs to. Pairs with keys above the
+	 * simplification threshold remain active.
+	 */
+	public float getPairKey( TopoTreeNode n );
+
+	/**
+	 * Largest key in the tree, the simplification level is a fraction of it.
+	 */
+	public default float getMaximum( PseudoContourTree ct ){
+		float max = 0;
+		for(int i = 0; i < ct.size(); i++){
+			float k = getPairKey( ct.getNode(i) );
+			if( !Float.isNaN(k) && !Float.isInfinite(k) ) max = Math.max( max, k );
+		}
+		return max;
+	}
+
+	/**
+	 * Computes the prune key of every node of ct.
+	 */
+	public default float [] getPruneKeys( TopoTree ct ){
+		float [] ret = new float[ct.size()];
+		for(int i = 0; i < ret.length; i++){
+			ret[i] = getPruneKey( ct.getNode(i) );
+		}
+		return ret;
+	}
+
+	/**
+	 * Computes the pair key of every node of ct.
+	 */
+	public default float [] getPairKeys( TopoTree ct ){
+		float [] ret = new float[ct.size()];
+		for(int i = 0; i < ret.length; i++){
+			ret[i] = getPairKey( ct.getNode(i) );
+		}
+		return ret;
+	}
+
+
+	public static final SimplificationMetric PERSISTENCE = new Persistence();
+	public static final SimplificationMetric VOLUME      = new Volume();
+	public static final SimplificationMetric HYPERVOLUME = new HyperVolume();
+
+	/**
+	 * Looks up a metric by name or alias (case insensitive).
+	 * @throws IllegalArgumentException if no such metric is registered.
+	 */
+	public static SimplificationMetric get( String name ){
+		SimplificationMetric ret = Registry.metrics.get( name.toLowerCase(Locale.ROOT) );
+		if( ret == null ) throw new IllegalArgumentException( "Unknown simplification metric: " + name );
+		return ret;
+	}
+
+	/**
+	 * Registers a metric under its name and any additional aliases.
+	 */
+	public static void register( SimplificationMetric metric, String ... aliases ){
+		Registry.metrics.put( metric.getName().toLowerCase(Locale.ROOT), metric );
+		for( String a : aliases ){
+			Registry.metrics.put( a.toLowerCase(Locale.ROOT), metric );
+		}
+	}
+
+	public static List<String> getNames( ){
+		List<String> ret = new ArrayList<String>();
+		for( SimplificationMetric m : Registry.metrics.values() ){
+			if( !ret.contains( m.getName() ) ) ret.add( m.getName() );
+		}
+		return ret;
+	}
+
+
+	public class Persistence implements SimplificationMetric {
+		@Override public String getName( ){ return "persistence"; }
+		@Override public float getPruneKey( TopoTreeNode n ){ return n.getSimplePersistence(); }
+		@Override public float getPairKey( TopoTreeNode n ){ return n.getPersistence(); }
+		@Override public float getMaximum( PseudoContourTree ct ){ return ct.getMaxPersistence(); }
+	}
+
+	public class Volume implements SimplificationMetric {
+		@Override public String getName( ){ return "volume"; }
+		@Override public float getPruneKey( TopoTreeNode n ){ return n.getVolumn(); }
+		@Override public float getPairKey( TopoTreeNode n ){ return n.getVolumn(); }
+		@Override public float getMaximum( PseudoContourTree ct ){ return ct.getMaxVolumn(); }
+	}
+
+	public class HyperVolume implements SimplificationMetric {
+		@Override public String getName( ){ return "hypervolume"; }
+		@Override public float getPruneKey( TopoTreeNode n ){ return n.getHyperVolumn(); }
+		@Override public float getPairKey( TopoTreeNode n ){ return n.getHyperVolumn(); }
+		@Override public float getMaximum( PseudoContourTree ct ){ return ct.getMaxHyperVolumn(); }
+	}
+
+	public class Registry {
+		private static final Map<String,SimplificationMetric> metrics = new ConcurrentHashMap<String,SimplificationMetric>();
+		static {
+			register( PERSISTENCE );
+			register( VOLUME, "volumn", "size" );
+			register( HYPERVOLUME, "hypervolumn" );
+		}
+		private Registry( ){ }
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ *     jPSimp - Persistence calculation and simplification of scalar fields.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.topology;
+
+import java.util.Comparator;
+
+import usf.saav.common.ParallelX;
+import usf.saav.common.algorithm.RadixSort;
+import usf.saav.mesh.Mesh;
+
+/**
+ * Orders mesh vertices by value using a parallel radix sort. The orders
+ * produced are identical to polling every vertex from a PriorityQueue using
+ * JoinTreeNode.ComparatorValueAscending/Descending.
+ */
+public class VertexOrder {
+
+	/**
+	 * Value ascending, ties broken by descending position.
+	 */
+	public static int [] ascending( float [] values ){
+		int n = values.length;
+		int [] keys = new int[n];
+		for(int i = 0; i < n; i++){
+			keys[i] = RadixSort.floatToSortableInt( values[n-1-i] );
+		}
+		return RadixSort.sort( keys, RadixSort.reverseIdentity(n) );
+	}
+
+	/**
+	 * Value descending, ties broken by ascending position.
+	 */
+	public static int [] descending( float [] values ){
+		return RadixSort.sortDescending( values );
+	}
+
+	public static int [] ascending( Mesh m ){
+		return ascending( getValues(m) );
+	}
+
+	public static int [] descending( Mesh m ){
+		return descending( getValues(m) );
+	}
+
+	/**
+	 * Returns the vertex order matching the comparator, or null if the
+	 * comparator is not one of the value comparators in JoinTreeNode.
+	 */
+	public static int [] getOrder( Mesh m, Comparator<?> comparator ){
+		if( comparator instanceof JoinTreeNode.ComparatorValueAscending )  return ascending(m);
+		if( comparator instanceof JoinTreeNode.ComparatorValueDescending ) return descending(m);
+		return null;
+	}
+
+	public static float [] getValues( final Mesh m ){
+		final float [] ret = new float[m.size()];
+		ParallelX.forEachChunk( ret.length, ParallelX.getChunkCount(ret.length, 1<<15), (c,start,end) -> {
+			for(int i = start; i < end; i++){
+				ret[i] = m.get(i).value();
+			}
+		});
+		return ret;
+	}
+
+}
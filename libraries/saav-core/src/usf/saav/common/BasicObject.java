@@ -41,6 +41,13 @@ public class BasicObject {
 		this.p_verbose = verbose;
 	}
 	
+	/**
+	 * Whether informational messages are printed
+	 */
+	protected boolean isVerbose( ){
+		return (use_glob && verbose) || (!use_glob && p_verbose);
+	}
+	
 	/**
 	 * Prints an informational message into the console
 	 * @param message Message to be print only is verbose is true
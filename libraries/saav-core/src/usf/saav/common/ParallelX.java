@@ -0,0 +1,69 @@
+/*
+ *     saav-core - A (very boring) software development support library.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.common;
+
+import java.util.stream.IntStream;
+
+public class ParallelX {
+
+	public interface ChunkTask {
+		void run( int chunk, int start, int end );
+	}
+
+	public interface IndexTask {
+		void run( int idx );
+	}
+
+	public static int getThreadCount( ){
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Number of chunks to split a range of n elements into, such that no chunk
+	 * is smaller than minChunk elements.
+	 */
+	public static int getChunkCount( int n, int minChunk ){
+		return Math.max( 1, Math.min( getThreadCount(), n / Math.max(1,minChunk) ) );
+	}
+
+	public static int chunkStart( int n, int chunks, int chunk ){
+		return (int)( (long)n * chunk / chunks );
+	}
+
+	/**
+	 * Splits [0,n) into the given number of contiguous chunks and runs the task
+	 * on each, in parallel. Returns once all chunks are complete.
+	 */
+	public static void forEachChunk( final int n, final int chunks, final ChunkTask task ){
+		if( chunks <= 1 ){
+			task.run( 0, 0, n );
+			return;
+		}
+		IntStream.range( 0, chunks ).parallel().forEach( c -> task.run( c, chunkStart(n,chunks,c), chunkStart(n,chunks,c+1) ) );
+	}
+
+	/**
+	 * Runs the task for every index in [0,n), in parallel.
+	 */
+	public static void forEach( int n, final IndexTask task ){
+		IntStream.range( 0, n ).parallel().forEach( i -> task.run(i) );
+	}
+
+}
@@ -19,9 +19,14 @@
  */
 package usf.saav.common.algorithm;
 
+/**
+ * Disjoint set over the integers [0,elemN). Sets are linked by size, with
+ * path halving during find. Equal sized sets keep the lower index as root.
+ */
 public class ArrayDisjointSet {
 
     protected int [] sets;
+    protected int [] size;
     
     public ArrayDisjointSet(int elemN){
         clear(elemN);
@@ -29,8 +34,10 @@ public class ArrayDisjointSet {
 
     public void clear( int elemN ){
     	sets = new int[elemN];
+    	size = new int[elemN];
         for(int i = 0; i < elemN; i++){
             sets[i] = i;
+            size[i] = 1;
         }
     }
 
@@ -62,8 +69,9 @@ public class ArrayDisjointSet {
             if( set0 != -1 ) sets[set0] = -1;
             if( set1 != -1 ) sets[set1] = -1;
         }
-        else{
+        else if( set0 != set1 ){
             sets[set1] = set0;
+            size[set0] += size[set1];
         }
     }
     
@@ -71,15 +79,28 @@ public class ArrayDisjointSet {
 		int r0 = find( set1 );
 		int r1 = find( set2 );
 		
-		if ( r0 < r1 ){
+		if( r0 == r1 ) return r0;
+		
+		if ( size[r0] > size[r1] || ( size[r0] == size[r1] && r0 < r1 ) ){
 			sets[r1] = r0;
+			size[r0] += size[r1];
 			return r0;
 		}
 		else {
 			sets[r0] = r1;
+			size[r1] += size[r0];
 			return r1;
 		}
 	}
+	
+	/**
+	 * Number of elements in the set containing elem.
+	 */
+	public int getSetSize( int elem ){
+		int set = get( elem );
+		if( set < 0 ) return 0;
+		return size[set];
+	}
     
 
 }
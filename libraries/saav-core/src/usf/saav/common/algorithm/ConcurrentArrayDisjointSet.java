@@ -0,0 +1,79 @@
+/*
+ *     saav-core - A (very boring) software development support library.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.common.algorithm;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free disjoint set over the integers [0,elemN), safe to find and union
+ * from multiple threads. Roots are only ever linked under a lower index, so
+ * once all unions complete the root of every set is its smallest element,
+ * regardless of the order in which threads performed the unions.
+ */
+public class ConcurrentArrayDisjointSet {
+
+	private AtomicIntegerArray sets;
+
+	public ConcurrentArrayDisjointSet( int elemN ){
+		clear( elemN );
+	}
+
+	public void clear( int elemN ){
+		sets = new AtomicIntegerArray( elemN );
+		for(int i = 0; i < elemN; i++){
+			sets.lazySet(i, i);
+		}
+	}
+
+	public int size( ){ return sets.length(); }
+
+	public int find( int elem ){
+		while( true ){
+			int p = sets.get(elem);
+			if( p == elem ) return elem;
+			int gp = sets.get(p);
+			// path halving, losing the race just means another thread already moved it
+			if( p != gp ) sets.compareAndSet( elem, p, gp );
+			elem = gp;
+		}
+	}
+
+	public int union( int set1, int set2 ){
+		while( true ){
+			int r0 = find( set1 );
+			int r1 = find( set2 );
+			if( r0 == r1 ) return r0;
+			if( r0 < r1 ){ int t = r0; r0 = r1; r1 = t; }
+			// r0 is the larger index, link it under r1 if it is still a root
+			if( sets.compareAndSet( r0, r0, r1 ) ) return r1;
+		}
+	}
+
+	public boolean sameSet( int elem0, int elem1 ){
+		while( true ){
+			int r0 = find( elem0 );
+			int r1 = find( elem1 );
+			if( r0 == r1 ) return true;
+			// r0 still being a root means the answer was valid at that instant
+			if( sets.get(r0) == r0 ) return false;
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ *     saav-core - A (very boring) software development support library.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.common.algorithm;
+
+import java.util.Arrays;
+
+import usf.saav.common.ParallelX;
+
+/**
+ * Stable least-significant-digit radix sort over primitive int keys, run in
+ * parallel chunks. Float keys are first mapped to ints with the same ordering.
+ */
+public class RadixSort {
+
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX      = 1<<RADIX_BITS;
+	private static final int MASK       = RADIX-1;
+	private static final int PASSES     = 32/RADIX_BITS;
+	private static final int MIN_CHUNK  = 1<<15;
+
+	/**
+	 * Maps a float to an int such that signed int comparison matches float
+	 * comparison. -0 and +0 map to the same key; NaN sorts above +infinity.
+	 */
+	public static int floatToSortableInt( float v ){
+		if( v == 0 ) v = 0.0f;
+		int bits = Float.floatToIntBits( v );
+		return bits ^ ( (bits>>31) & 0x7fffffff );
+	}
+
+	public static int [] floatToSortableInt( final float [] values ){
+		final int [] keys = new int[values.length];
+		ParallelX.forEachChunk( values.length, ParallelX.getChunkCount(values.length, MIN_CHUNK), (c,start,end) -> {
+			for(int i = start; i < end; i++){
+				keys[i] = floatToSortableInt( values[i] );
+			}
+		});
+		return keys;
+	}
+
+	/**
+	 * Sorts values in ascending order, ties broken by ascending index.
+	 * @return the permutation, i.e. the index of the i-th smallest value.
+	 */
+	public static int [] sortAscending( float [] values ){
+		return sort( floatToSortableInt(values), identity(values.length) );
+	}
+
+	/**
+	 * Sorts values in descending order, ties broken by ascending index.
+	 * @return the permutation, i.e. the index of the i-th largest value.
+	 */
+	public static int [] sortDescending( float [] values ){
+		int [] keys = floatToSortableInt(values);
+		for(int i = 0; i < keys.length; i++){
+			keys[i] = ~keys[i];
+		}
+		return sort( keys, identity(values.length) );
+	}
+
+	public static int [] identity( int n ){
+		int [] ret = new int[n];
+		for(int i = 0; i < n; i++){
+			ret[i] = i;
+		}
+		return ret;
+	}
+
+	public static int [] reverseIdentity( int n ){
+		int [] ret = new int[n];
+		for(int i = 0; i < n; i++){
+			ret[i] = n-1-i;
+		}
+		return ret;
+	}
+
+	/**
+	 * Stable sort of (signed) keys. The perm array is carried along with the keys,
+	 * so elements with equal keys stay in their initial perm order. Neither input
+	 * array is preserved.
+	 * @return perm reordered by ascending key.
+	 */
+	public static int [] sort( int [] keys, int [] perm ){
+		final int n = keys.length;
+		if( perm.length != n ) throw new IllegalArgumentException( "keys and perm lengths differ" );
+
+		final int chunks = ParallelX.getChunkCount( n, MIN_CHUNK );
+		final int [][] offset = new int[chunks][RADIX];
+
+		int [] srcK = keys, dstK = new int[n];
+		int [] srcP = perm, dstP = new int[n];
+
+		for( int pass = 0; pass < PASSES; pass++ ){
+			final int shift = pass*RADIX_BITS;
+			// flip the sign bit on the top digit so negative keys sort first
+			final int flip  = ( pass == PASSES-1 ) ? (1<<(RADIX_BITS-1)) : 0;
+			final int [] sk = srcK, sp = srcP, dk = dstK, dp = dstP;
+
+			// per-chunk histogram
+			ParallelX.forEachChunk( n, chunks, (c,start,end) -> {
+				int [] cnt = offset[c];
+				Arrays.fill( cnt, 0 );
+				for(int i = start; i < end; i++){
+					cnt[ ((sk[i]>>>shift)&MASK)^flip ]++;
+				}
+			});
+
+			// exclusive prefix sum in (digit, chunk) order keeps the sort stable
+			boolean trivial = false;
+			int sum = 0;
+			for( int d = 0; d < RADIX; d++ ){
+				int digitTotal = 0;
+				for( int c = 0; c < chunks; c++ ){
+					int tmp = offset[c][d];
+					offset[c][d] = sum;
+					sum += tmp;
+					digitTotal += tmp;
+				}
+				if( digitTotal == n ) trivial = true;
+			}
+			if( trivial ) continue;
+
+			// scatter
+			ParallelX.forEachChunk( n, chunks, (c,start,end) -> {
+				int [] off = offset[c];
+				for(int i = start; i < end; i++){
+					int dst = off[ ((sk[i]>>>shift)&MASK)^flip ]++;
+					dk[dst] = sk[i];
+					dp[dst] = sp[i];
+				}
+			});
+
+			int [] t;
+			t = srcK; srcK = dstK; dstK = t;
+			t = srcP; srcP = dstP; dstP = t;
+		}
+
+		return srcP;
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ *     saav-core - A (very boring) software development support library.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.common.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Long-indexed float storage. Small arrays live on the heap, large ones in
+ * memory-mapped files so they are bounded by neither -Xmx nor 2^31 elements.
+ */
+public interface FloatStorage {
+
+	public long  size( );
+	public float get( long idx );
+	public void  set( long idx, float v );
+	public void  close( );
+
+	/**
+	 * Copies len elements starting at idx into dst at off.
+	 */
+	public default void get( long idx, float [] dst, int off, int len ){
+		for(int i = 0; i < len; i++){
+			dst[off+i] = get( idx+i );
+		}
+	}
+
+	/**
+	 * Copies len elements of src starting at off into the storage at idx.
+	 */
+	public default void set( long idx, float [] src, int off, int len ){
+		for(int i = 0; i < len; i++){
+			set( idx+i, src[off+i] );
+		}
+	}
+
+	/**
+	 * Element count above which allocate() moves storage off the heap.
+	 */
+	public static final long OFFHEAP_THRESHOLD = 1L<<26;
+
+	public static FloatStorage allocate( long size ){
+		if( size < OFFHEAP_THRESHOLD ) return new FloatStorage.Array( (int)size );
+		try {
+			return OffHeap.mapTemporary( size );
+		} catch (IOException e) {
+			throw new RuntimeException( "Unable to allocate off-heap storage for " + size + " elements", e );
+		}
+	}
+
+	public static FloatStorage copyOf( FloatStorage src ){
+		if( src instanceof FloatStorage.Array ){
+			return new FloatStorage.Array( ((FloatStorage.Array)src).getArray().clone() );
+		}
+		FloatStorage ret = allocate( src.size() );
+		float [] buf = new float[ (int)Math.min( src.size(), 1<<16 ) ];
+		for(long i = 0; i < src.size(); i += buf.length){
+			int n = (int)Math.min( buf.length, src.size()-i );
+			src.get( i, buf, 0, n );
+			ret.set( i, buf, 0, n );
+		}
+		return ret;
+	}
+
+
+	public class Array implements FloatStorage {
+		private float [] data;
+
+		public Array( int size ){ data = new float[size]; }
+		public Array( float [] data ){ this.data = data; }
+
+		public float [] getArray( ){ return data; }
+
+		@Override public long  size( ){ return data.length; }
+		@Override public float get( long idx ){ return data[(int)idx]; }
+		@Override public void  set( long idx, float v ){ data[(int)idx] = v; }
+		@Override public void  get( long idx, float [] dst, int off, int len ){ System.arraycopy( data, (int)idx, dst, off, len ); }
+		@Override public void  set( long idx, float [] src, int off, int len ){ System.arraycopy( src, off, data, (int)idx, len ); }
+		@Override public void  close( ){ }
+	}
+
+
+	/**
+	 * Storage split over FloatBuffer chunks of 2^CHUNK_BITS elements, either
+	 * direct buffers or regions of a memory-mapped file.
+	 */
+	public class OffHeap implements FloatStorage {
+
+		private static final int  CHUNK_BITS = 28;
+		private static final long CHUNK_SIZE = 1L<<CHUNK_BITS;
+		private static final long CHUNK_MASK = CHUNK_SIZE-1;
+
+		private long size;
+		private FloatBuffer [] chunks;
+		private MappedByteBuffer [] mapped = null;
+		private RandomAccessFile raf = null;
+		private File tempFile = null;
+
+		/**
+		 * Direct (non-mapped) buffers. Note these count against -XX:MaxDirectMemorySize.
+		 */
+		public OffHeap( long size ){
+			this.size   = size;
+			this.chunks = new FloatBuffer[ chunkCount(size) ];
+			for( int c = 0; c < chunks.length; c++ ){
+				ByteBuffer bb = ByteBuffer.allocateDirect( (int)(chunkLength(c)*4) );
+				bb.order( ByteOrder.nativeOrder() );
+				chunks[c] = bb.asFloatBuffer();
+			}
+		}
+
+		/**
+		 * Maps size elements of file, growing the file if needed.
+		 */
+		public OffHeap( File file, long size ) throws IOException {
+			this.size   = size;
+			this.raf    = new RandomAccessFile( file, "rw" );
+			if( raf.length() < size*4 ) raf.setLength( size*4 );
+			FileChannel chan = raf.getChannel();
+			this.chunks = new FloatBuffer[ chunkCount(size) ];
+			this.mapped = new MappedByteBuffer[ chunks.length ];
+			for( int c = 0; c < chunks.length; c++ ){
+				mapped[c] = chan.map( FileChannel.MapMode.READ_WRITE, c*CHUNK_SIZE*4, chunkLength(c)*4 );
+				mapped[c].order( ByteOrder.nativeOrder() );
+				chunks[c] = mapped[c].asFloatBuffer();
+			}
+		}
+
+		/**
+		 * Maps a temporary file that is deleted on close (or exit).
+		 */
+		public static OffHeap mapTemporary( long size ) throws IOException {
+			File tmp = File.createTempFile( "floatstorage", ".bin" );
+			tmp.deleteOnExit();
+			OffHeap ret = new OffHeap( tmp, size );
+			ret.tempFile = tmp;
+			return ret;
+		}
+
+		private static int chunkCount( long size ){
+			return (int)( (size + CHUNK_SIZE - 1) >>> CHUNK_BITS );
+		}
+
+		private long chunkLength( int c ){
+			return Math.min( CHUNK_SIZE, size - c*CHUNK_SIZE );
+		}
+
+		@Override public long  size( ){ return size; }
+		@Override public float get( long idx ){ return chunks[(int)(idx>>>CHUNK_BITS)].get( (int)(idx&CHUNK_MASK) ); }
+		@Override public void  set( long idx, float v ){ chunks[(int)(idx>>>CHUNK_BITS)].put( (int)(idx&CHUNK_MASK), v ); }
+
+		// bulk transfers go through duplicates so concurrent callers do not share buffer positions
+		@Override
+		public void get( long idx, float [] dst, int off, int len ){
+			while( len > 0 ){
+				int c = (int)(idx>>>CHUNK_BITS);
+				int p = (int)(idx&CHUNK_MASK);
+				int n = (int)Math.min( len, CHUNK_SIZE-p );
+				FloatBuffer fb = chunks[c].duplicate();
+				fb.position( p );
+				fb.get( dst, off, n );
+				idx += n; off += n; len -= n;
+			}
+		}
+
+		@Override
+		public void set( long idx, float [] src, int off, int len ){
+			while( len > 0 ){
+				int c = (int)(idx>>>CHUNK_BITS);
+				int p = (int)(idx&CHUNK_MASK);
+				int n = (int)Math.min( len, CHUNK_SIZE-p );
+				FloatBuffer fb = chunks[c].duplicate();
+				fb.position( p );
+				fb.put( src, off, n );
+				idx += n; off += n; len -= n;
+			}
+		}
+
+		/**
+		 * Flushes mapped chunks back to their file.
+		 */
+		public void flush( ){
+			if( mapped == null ) return;
+			for( MappedByteBuffer m : mapped ){
+				m.force();
+			}
+		}
+
+		@Override
+		public void close( ){
+			try {
+				if( raf != null ){
+					if( tempFile == null ) flush();
+					raf.close();
+					raf = null;
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			chunks = null;
+			mapped = null;
+			if( tempFile != null ) tempFile.delete();
+		}
+	}
+
+}
@@ -28,6 +28,13 @@ public class Histogram {
 		}
 	}
 	
+	/**
+	 * Adds a precomputed count to a bin.
+	 */
+	public void addToBin( int binID, int cnt ){
+		bins[binID] += cnt;
+	}
+	
 	public int binMax( ){
 		return MathX.max(bins);     
 	}
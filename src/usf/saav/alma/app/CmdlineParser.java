@@ -20,8 +20,13 @@
  */
 package usf.saav.alma.app;
 
+import java.io.File;
+import java.util.Arrays;
+
 import usf.saav.alma.app.TDAInteractive.TreeDimension;
+import usf.saav.alma.util.ResultCache;
 import usf.saav.common.range.IntRange1D;
+import usf.saav.topology.SimplificationMetric;
 
 public class CmdlineParser {
 
@@ -35,7 +40,8 @@ public class CmdlineParser {
 				
 		for( String arg : args ){
 			if( arg.startsWith("dim=") ){
-				if(      arg.substring(4).compareToIgnoreCase("2D") == 0    ) exec.treedim = TreeDimension.DIM_2D;
+				if(      arg.substring(4).compareToIgnoreCase("1D") == 0    ) exec.treedim = TreeDimension.DIM_1D;
+				else if( arg.substring(4).compareToIgnoreCase("2D") == 0    ) exec.treedim = TreeDimension.DIM_2D;
 				else if( arg.substring(4).compareToIgnoreCase("3D") == 0    ) exec.treedim = TreeDimension.DIM_3D;
 				else{
 					System.err.println( "Unknown dimension " + arg.substring(4) );
@@ -59,12 +65,39 @@ public class CmdlineParser {
 				continue;
 			}
 			if( arg.startsWith("simplify=") ){
-				exec.simplification = Float.parseFloat( arg.substring(9) );
+				String val = arg.substring(9);
+				if( val.startsWith("[") ){
+					exec.simplifyLevels = parseLevels( val );
+					exec.simplification = exec.simplifyLevels[exec.simplifyLevels.length-1];
+				}
+				else {
+					exec.simplification = Float.parseFloat( val );
+				}
 				continue;
 			}
 			if( arg.startsWith("metric=") ){
-			    exec.metric = arg.substring(7);
-			    continue;
+				try {
+					exec.metric = SimplificationMetric.get( arg.substring(7) ).getName();
+				} catch( IllegalArgumentException e ){
+					fail( "Unknown metric " + arg.substring(7) );
+				}
+				continue;
+			}
+			if( arg.startsWith("engine=") ){
+				if(      arg.substring(7).equalsIgnoreCase("tree")      ) exec.thresholdEngine = false;
+				else if( arg.substring(7).equalsIgnoreCase("threshold") ) exec.thresholdEngine = true;
+				else fail( "Unknown engine " + arg.substring(7) );
+				continue;
+			}
+			if( arg.startsWith("cache=") ){
+				if(      arg.substring(6).equalsIgnoreCase("off") ) exec.cache = null;
+				else if( arg.substring(6).equalsIgnoreCase("on")  ) exec.cache = ResultCache.getDefault();
+				else exec.cache = new ResultCache( new File( arg.substring(6) ), ResultCache.DEFAULT_MAX_BYTES );
+				continue;
+			}
+			if( arg.startsWith("bin=") ){
+				exec.spectralBin = Math.max( 1, Integer.parseInt( arg.substring(4) ) );
+				continue;
 			}
 			if( arg.startsWith("output=") ){
 				exec.output = arg.substring(7);
@@ -75,6 +108,43 @@ public class CmdlineParser {
 				System.err.println( "Unknown argument: " + arg );
 			}
 		}	
+		if( exec.thresholdEngine && !exec.metric.equals( SimplificationMetric.PERSISTENCE.getName() ) ){
+			fail( "engine=threshold only supports metric=" + SimplificationMetric.PERSISTENCE.getName() );
+		}
+	}
+
+	private static void fail( String msg ){
+		System.err.println( msg );
+		printUsage();
+		System.exit(-1);
+	}
+	
+
+	/**
+	 * Parses a list of levels such as [0.05,0.1,0.2], returned in ascending
+	 * order without duplicates.
+	 */
+	public static float [] parseLevels( String str ){
+		String [] parts = str.replaceAll("[\\[\\]\\s]", "").split(",");
+		float [] ret = new float[parts.length];
+		for(int i = 0; i < parts.length; i++){
+			ret[i] = Float.parseFloat( parts[i] );
+		}
+		Arrays.sort( ret );
+		int n = 0;
+		for(int i = 0; i < ret.length; i++){
+			if( n == 0 || Float.compare( ret[i], ret[n-1] ) != 0 ) ret[n++] = ret[i];
+		}
+		return Arrays.copyOf( ret, n );
+	}
+
+	public static String levelsToString( float [] levels ){
+		StringBuilder sb = new StringBuilder("[");
+		for(int i = 0; i < levels.length; i++){
+			if( i > 0 ) sb.append(",");
+			sb.append( levels[i] );
+		}
+		return sb.append("]").toString();
 	}
 	
 
@@ -109,12 +179,20 @@ public class CmdlineParser {
 		System.out.println("    input_file      ---  Input file in fits format.");
 		System.out.println();
 		System.out.println("  Options:");
-		System.out.println("    dim=DIM_TYPE    ---  Type of contour tree to create. Options: 2D or 3D. (default: 2D)");
+		System.out.println("    dim=DIM_TYPE    ---  Type of contour tree to create. Options: 1D, 2D or 3D. (default: 2D)");
+		System.out.println("                         1D simplifies the spectrum of every spaxel independently.");
 		System.out.println("    x=RANGE         ---  Range of pixels in x direction. Valid options included single values and inclusive/exclusive ranges. (default: width of image)");
 		System.out.println("    y=RANGE         ---  Range of pixels in y direction. (default: height of image)");
 		System.out.println("    z=RANGE         ---  Range of pixels in z direction. (default: depth of image)");
 		System.out.println("    simplify=AMOUNT ---  Maximum persistence to simplify. (default: 0, no simplification)");
+		System.out.println("                         A list such as [0.05,0.1,0.2] writes one output per level, e.g. output_0.1.fits.");
+		System.out.println("    metric=METRIC   ---  Measure used for simplification. Options: " + String.join(", ", SimplificationMetric.getNames()) + ". (default: persistence)");
+		System.out.println("    engine=ENGINE   ---  Simplification engine. Options: tree, threshold. (default: tree)");
+		System.out.println("                         threshold skips the contour tree and cancels every pair with persistence up to");
+		System.out.println("                         simplify times the value range of the slice, volume or spectrum. Persistence only.");
+		System.out.println("    bin=N           ---  For 3D, build the tree on the mean of every N channels and map the simplification back to all channels. (default: 1)");
 		System.out.println("    output=FILE     ---  The place to save the results. (default: not saved)");
+		System.out.println("    cache=DIR       ---  Directory for cached results, or on to use the system temp directory. Bounded to " + (ResultCache.DEFAULT_MAX_BYTES>>20) + " MB. (default: off)");
 		System.out.println("    interactive     ---  Places the application into interactive mode.");
 		System.out.println( );
 		System.out.println("  Example: ");
@@ -129,12 +207,16 @@ public class CmdlineParser {
 		System.out.print("  java -jar ALMA-TDA.jar" );
 		System.out.print(" dim=");
 		switch(exec.treedim){
+			case DIM_1D: 		System.out.print("1D"); 	break;
 			case DIM_2D: 		System.out.print("2D"); 	break;
 			case DIM_2D_STACK:	System.out.print("2D"); 	break;
 			case DIM_3D:		System.out.print("3D"); 	break;
 		}
 		System.out.print(" x=" + exec.xr.toString() + " y=" + exec.yr.toString() + " z=" + exec.zr.toString());
-		System.out.print(" simplify=" + exec.simplification );
+		System.out.print(" simplify=" + ( exec.simplifyLevels == null ? Float.toString(exec.simplification) : levelsToString(exec.simplifyLevels) ) );
+		System.out.print(" metric=" + exec.metric );
+		if( exec.thresholdEngine ) System.out.print(" engine=threshold" );
+		if( exec.spectralBin > 1 ) System.out.print(" bin=" + exec.spectralBin );
 		System.out.print(" output=" + exec.output );
 		System.out.print(" " + exec.filename );
 		System.out.println();
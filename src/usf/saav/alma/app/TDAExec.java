@@ -20,6 +20,7 @@
  */
 package usf.saav.alma.app;
 
+import java.io.File;
 import java.io.IOException;
 
 import nom.tam.fits.common.FitsException;
@@ -28,20 +29,36 @@ import usf.saav.alma.data.fits.FitsReader;
 import usf.saav.alma.data.fits.FitsWriter;
 import usf.saav.alma.data.fits.RawFitsReader;
 import usf.saav.alma.data.fits.SafeFitsReader;
-import usf.saav.alma.data.processors.Composite2D;
-import usf.saav.alma.data.processors.Extract2DFrom3D;
+import usf.saav.alma.data.fits.SliceStatistics;
+import usf.saav.alma.data.processors.SpectralBin3D;
+import usf.saav.alma.util.ResultCache;
+import usf.saav.common.ParallelX;
+import usf.saav.common.data.FloatStorage;
 import usf.saav.common.range.IntRange1D;
+import usf.saav.scalarfield.ScalarField1D;
 import usf.saav.scalarfield.ScalarField2D;
+import usf.saav.scalarfield.ScalarField3D;
 import usf.saav.scalarfield.ScalarFieldND;
+import usf.saav.topology.SimplificationMetric;
 
 public class TDAExec {
 
+	/**
+	 * Approximate number of voxels read at once when simplifying spectra.
+	 */
+	public static final long SPECTRA_BAND_SIZE = 1L<<24;
+
 	FitsReader fits = null;
+	SliceStatistics stats = null;
 	
 	public String filename = null;
 	public IntRange1D xr=null,yr=null,zr=null;
 	public float simplification = 0;
+	public float [] simplifyLevels = null;
+	public ResultCache cache = null;
 	public String metric = "persistence";
+	public boolean thresholdEngine = false;
+	public int spectralBin = 1;
 	public TreeDimension treedim = TreeDimension.DIM_2D;
 	public String  output  = null;
 
@@ -53,6 +70,7 @@ public class TDAExec {
 	public void loadFile( ){
 		try {
 			fits = new SafeFitsReader( new RawFitsReader(filename, true), true );
+			stats = SliceStatistics.load( fits );
 		} catch (IOException | FitsException e) {
 			e.printStackTrace();
 			System.exit(-1);
@@ -68,36 +86,216 @@ public class TDAExec {
 		TDAProcessor3D volProc   = new TDAProcessor3D();
 
 		if( output == null ) return;
-		if( treedim == TreeDimension.DIM_3D ){
-			volProc.process( fits,  xr, yr, zr, simplification, metric );
-		}		
+		float [] levels = getLevels();
 		try {
-			FitsWriter fw = new FitsWriter( fits.getAxesSize()[0].length(), fits.getAxesSize()[1].length(), fits.getAxesSize()[2].length() );
-			fw.open( fits, output );
-			for(int d = 0; d < fits.getAxesSize()[2].length(); d++ ){
-				
-				ScalarField2D writeslice = fits.getSlice(d, 0);
-				if (!ScalarFieldND.Default.isValidField(writeslice)) {
-				    fw.writeSlice(writeslice, d);
-				    continue;
+			ScalarField3D volume = null;
+			FloatStorage [] volResult = null;
+			if( treedim == TreeDimension.DIM_3D ){
+				volume = fits.getVolume( xr, yr, zr, 0 );
+				if( spectralBin > 1 ){
+					// build the tree on binned channels, then carry the changes back to every channel
+					SpectralBin3D binned = new SpectralBin3D( volume, spectralBin, SpectralBin3D.Mode.MEAN );
+					ScalarField3D.StorageField binVol = binned.materialize();
+					volResult = simplify( volProc, binVol, levels );
+					binVol.getStorage().close();
+					for(int l = 0; l < levels.length; l++ ){
+						FloatStorage res = volResult[l];
+						volResult[l] = binned.expand( res );
+						res.close();
+					}
+				}
+				else {
+					volResult = simplify( volProc, volume, levels );
 				}
+			}
+			if( treedim == TreeDimension.DIM_1D ){
+				volResult = simplifySpectra( levels );
+			}
+
+			// one cube in memory for every level: the base slices are written once,
+			// then each level overwrites the same regions and is saved in turn
+			int depth = fits.getAxesSize()[2].length();
+			FitsWriter fw = new FitsWriter( fits.getAxesSize()[0].length(), fits.getAxesSize()[1].length(), depth );
+			fw.open( fits );
+			FloatStorage [][] sliceResult = new FloatStorage[depth][];
+			int rw = 0, rh = 0;
+			for(int d = 0; d < depth; d++ ){
+				
+				ScalarField2D baseslice = fits.getSlice(d, 0);
+				fw.writeSlice(baseslice, d);
+				if( !stats.isValid(d) ) continue;
 				if( (treedim == TreeDimension.DIM_2D || treedim == TreeDimension.DIM_2D_STACK) && zr.inRange(d) ){
-					sliceProc.process(fits, xr, yr, d, simplification, metric);
-					writeslice = new Composite2D(writeslice, sliceProc.s2d, xr.start(), yr.start() );
+					ScalarField2D region = fits.getSlice( xr, yr, d, 0 );
+					rw = region.getWidth();
+					rh = region.getHeight();
+					sliceResult[d] = simplify( sliceProc, region, levels );
 				}
-				if( treedim == TreeDimension.DIM_3D && zr.inRange(d) ){
-					ScalarField2D modslice = new Extract2DFrom3D( volProc.s3d, d-zr.start() );
-					writeslice = new Composite2D(writeslice, modslice, xr.start(), yr.start() );
+			}
+			for(int l = 0; l < levels.length; l++ ){
+				for(int d = 0; d < depth; d++ ){
+					if( sliceResult[d] != null ){
+						fw.writeSlice( sliceResult[d][l], 0, xr.start(), yr.start(), rw, rh, d );
+						sliceResult[d][l].close();
+					}
+					if( volResult != null && stats.isValid(d) && zr.inRange(d) ){
+						// copy straight from the simplified long-indexed storage
+						long offset = (long)(d-zr.start())*xr.length()*yr.length();
+						fw.writeSlice( volResult[l], offset, xr.start(), yr.start(), xr.length(), yr.length(), d );
+					}
 				}
-				fw.writeSlice( writeslice, d );
+				fw.save( getOutputFile(l) );
+				// large results are temporary file mappings, release them once written
+				if( volResult != null ) volResult[l].close();
 			}
-			fw.close();
 		} catch (IOException | FitsException e) {
 			e.printStackTrace();
 			System.exit(0);
 		}
 	}
 
+	/**
+	 * Simplifies a slice to every level, taking results from the cache when
+	 * all levels are present.
+	 */
+	FloatStorage [] simplify( TDAProcessor2D proc, ScalarField2D region, float [] levels ){
+		ResultCache.Key [] keys = getKeys( new ResultCache.Key(thresholdEngine ? "threshold-2d" : "tda-2d").add(region), levels );
+		FloatStorage [] ret = getCached( keys );
+		if( ret != null ) return ret;
+
+		if( thresholdEngine ) proc.processThreshold( region, levels );
+		else proc.process( region, levels, metric );
+		ret = new FloatStorage[levels.length];
+		for(int l = 0; l < levels.length; l++ ){
+			ret[l] = proc.getStorage(l);
+			if( cache != null ) cache.put( keys[l], ret[l] );
+		}
+		return ret;
+	}
+
+	FloatStorage [] simplify( TDAProcessor3D proc, ScalarField3D volume, float [] levels ){
+		ResultCache.Key [] keys = getKeys( new ResultCache.Key(thresholdEngine ? "threshold-3d" : "tda-3d").add(volume), levels );
+		FloatStorage [] ret = getCached( keys );
+		if( ret != null ) return ret;
+
+		if( thresholdEngine ) proc.processThreshold( volume, levels );
+		else proc.process( volume, levels, metric );
+		ret = new FloatStorage[levels.length];
+		for(int l = 0; l < levels.length; l++ ){
+			ret[l] = proc.getStorage(l);
+			if( cache != null ) cache.put( keys[l], ret[l] );
+		}
+		return ret;
+	}
+
+	/**
+	 * Simplifies the spectrum of every spaxel independently. The region is read
+	 * in bands of rows, and the spaxels of a band are processed in parallel.
+	 * Results are laid out slice by slice, like a simplified volume, and are
+	 * taken from the cache when all levels are present.
+	 */
+	FloatStorage [] simplifySpectra( final float [] levels ) throws IOException {
+		final int w = xr.length(), h = yr.length(), d = zr.length();
+		final long sliceSize = (long)w*h;
+		int rows = (int)Math.max( 1, Math.min( h, SPECTRA_BAND_SIZE / ((long)w*d) ) );
+
+		ResultCache.Key [] keys = null;
+		if( cache != null ){
+			// hashed band by band, so the region is never held in memory at once
+			ResultCache.Key data = new ResultCache.Key( thresholdEngine ? "threshold-1d" : "tda-1d" );
+			for( int y0 = 0; y0 < h; y0 += rows ){
+				data.add( fits.getVolume( xr, new IntRange1D( yr.start()+y0, yr.start()+Math.min( h, y0+rows )-1 ), zr, 0 ) );
+			}
+			keys = getKeys( data, levels );
+			FloatStorage [] cached = getCached( keys );
+			if( cached != null ) return cached;
+		}
+
+		final FloatStorage [] ret = new FloatStorage[levels.length];
+		for(int l = 0; l < levels.length; l++ ){
+			ret[l] = FloatStorage.allocate( sliceSize*d );
+		}
+
+		for( int y0 = 0; y0 < h; y0 += rows ){
+			final int by = y0;
+			final int bh = Math.min( rows, h-y0 );
+			System.out.println( "Simplifying spectra, rows " + (yr.start()+by) + " to " + (yr.start()+by+bh-1) );
+			final ScalarField3D band = fits.getVolume( xr, new IntRange1D( yr.start()+by, yr.start()+by+bh-1 ), zr, 0 );
+			float [] bandArray = band.getBackingArray();
+			if( bandArray == null ){
+				bandArray = new float[w*bh*d];
+				band.getRegion( 0, 0, 0, w, bh, d, bandArray, 0 );
+			}
+			final float [] vals = bandArray;
+
+			ParallelX.forEach( w*bh, (i) -> {
+				int x = i % w;
+				int y = i / w;
+				float [] spec = new float[d];
+				for(int z = 0; z < d; z++ ){
+					spec[z] = vals[ (z*bh + y)*w + x ];
+				}
+				long base = (long)(by+y)*w + x;
+
+				TDAProcessor1D proc = new TDAProcessor1D();
+				ScalarField1D sf = new ScalarField1D.ArrayField( spec );
+				if( ScalarFieldND.Default.isValidField( sf ) ){
+					if( thresholdEngine ) proc.processThreshold( sf, levels );
+					else proc.process( sf, levels, metric );
+				}
+				for(int l = 0; l < levels.length; l++ ){
+					FloatStorage res = proc.getStorage(l);
+					for(int z = 0; z < d; z++ ){
+						ret[l].set( z*sliceSize + base, ( res == null ) ? spec[z] : res.get(z) );
+					}
+				}
+			});
+		}
+		if( cache != null ){
+			for(int l = 0; l < levels.length; l++ ) cache.put( keys[l], ret[l] );
+		}
+		return ret;
+	}
+
+	private ResultCache.Key [] getKeys( ResultCache.Key data, float [] levels ){
+		data.add( SimplificationMetric.get(metric).getName() );
+		ResultCache.Key [] ret = new ResultCache.Key[levels.length];
+		for(int l = 0; l < levels.length; l++ ){
+			ret[l] = data.derive().add( levels[l] );
+		}
+		return ret;
+	}
+
+	private FloatStorage [] getCached( ResultCache.Key [] keys ){
+		if( cache == null ) return null;
+		FloatStorage [] ret = new FloatStorage[keys.length];
+		for(int l = 0; l < keys.length; l++ ){
+			if( !cache.contains( keys[l] ) || (ret[l] = cache.get( keys[l] )) == null ) return null;
+		}
+		System.out.println( "Using cached result" );
+		return ret;
+	}
+
+	/**
+	 * Simplification levels to produce, ascending. A single level unless a
+	 * sweep was requested.
+	 */
+	public float [] getLevels( ){
+		if( simplifyLevels == null || simplifyLevels.length == 0 ) return new float[]{ simplification };
+		return simplifyLevels;
+	}
+
+	/**
+	 * Output file for a level. Sweeps insert the level before the extension,
+	 * e.g. out.fits becomes out_0.1.fits.
+	 */
+	public String getOutputFile( int level ){
+		float [] levels = getLevels();
+		if( levels.length == 1 ) return output;
+		int ext = output.lastIndexOf('.');
+		if( ext <= output.lastIndexOf(File.separatorChar) ) ext = output.length();
+		return output.substring(0,ext) + "_" + levels[level] + output.substring(ext);
+	}
+
 	
 
 
@@ -113,6 +311,9 @@ public class TDAExec {
 		
 		TDAExec       exec = new TDAExec();
 		CmdlineParser cmd  = new CmdlineParser( exec, args );
+		if( exec.cache != null ){
+			System.out.println( "Caching results in " + exec.cache.getDirectory() + " (up to " + (exec.cache.getMaxBytes()>>20) + " MB)" );
+		}
 		if( cmd.interactive ){
 			TDAInteractive.create( exec );
 		}
@@ -61,7 +61,7 @@ public class TDAInteractive extends JFrame {
 	 * The Enum TreeDimension.
 	 */
 	public enum TreeDimension {
-		DIM_2D, DIM_2D_STACK, DIM_3D
+		DIM_1D, DIM_2D, DIM_2D_STACK, DIM_3D
 	}
 	
 
@@ -0,0 +1,113 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.app;
+
+import usf.saav.common.BasicObject;
+import usf.saav.common.data.FloatStorage;
+import usf.saav.mesh.PathMesh;
+import usf.saav.scalarfield.ScalarField1D;
+import usf.saav.scalarfield.ScalarFieldND;
+import usf.saav.scalarfield.Simplifier1D;
+import usf.saav.scalarfield.ThresholdSimplifier1D;
+import usf.saav.topology.PseudoContourTree;
+import usf.saav.topology.SimplificationMetric;
+
+/**
+ * Simplifies a single spectrum. Runs once per spaxel, so it is quiet unless
+ * constructed verbose.
+ */
+public class TDAProcessor1D extends BasicObject {
+
+	Simplifier1D s1d;
+	FloatStorage [] thresholded;
+	ScalarField1D spectrum;
+
+	public TDAProcessor1D( ){
+		super(false);
+	}
+
+	public TDAProcessor1D( boolean verbose ){
+		super(verbose);
+	}
+
+	public void process( ScalarField1D _spectrum, float simplification, String metric ){
+		process( _spectrum, new float[]{ simplification }, metric );
+	}
+
+	/**
+	 * Builds the tree once and simplifies to every level, in ascending order.
+	 * Spectra without at least one min/max pair are left unsimplified, in which
+	 * case s1d is null.
+	 */
+	public void process( ScalarField1D _spectrum, float [] levels, String metric ){
+
+		spectrum = _spectrum;
+		s1d = null;
+		thresholded = null;
+
+		this.print_info_message("Constructing Mesh");
+		PathMesh cl = new PathMesh( spectrum );
+		if( cl.size() < 2 ) return;
+
+		this.print_info_message("Constructing Tree");
+		PseudoContourTree ct = new PseudoContourTree( cl, isVerbose(), isVerbose() );
+
+		this.print_info_message("Simplifying Tree");
+		ct.setSimplificationLevel( levels[levels.length-1] );
+		ct.setSimplificationMetric( metric );
+		this.print_info_message("Simplfying Field");
+		s1d = new Simplifier1D( spectrum, ct, cl, levels, SimplificationMetric.get(metric), true, isVerbose() );
+
+	}
+
+	/**
+	 * Simplifies persistence with ThresholdSimplifier1D, without building the
+	 * contour tree. Levels are fractions of the spectrum's value range.
+	 */
+	public void processThreshold( ScalarField1D _spectrum, float [] levels ){
+
+		spectrum = _spectrum;
+		s1d = null;
+		thresholded = null;
+
+		this.print_info_message("Constructing Mesh");
+		PathMesh cl = new PathMesh( spectrum );
+		if( cl.size() < 2 ) return;
+
+		double [] range = ScalarFieldND.Default.getValueRange( spectrum );
+		this.print_info_message("Simplfying Field");
+		thresholded = new FloatStorage[levels.length];
+		for(int l = 0; l < levels.length; l++ ){
+			float threshold = (float)( levels[l]*(range[1]-range[0]) );
+			thresholded[l] = new ThresholdSimplifier1D( spectrum, cl, threshold, true, isVerbose() ).getStorage();
+		}
+	}
+
+	/**
+	 * Result for the given level of the last process() or processThreshold(),
+	 * or null if the spectrum was left unsimplified.
+	 */
+	public FloatStorage getStorage( int level ){
+		if( thresholded != null ) return thresholded[level];
+		return ( s1d == null ) ? null : s1d.getStorage(level);
+	}
+
+}
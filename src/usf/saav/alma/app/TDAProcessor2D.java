@@ -24,19 +24,26 @@ import java.io.IOException;
 
 import usf.saav.alma.data.fits.FitsReader;
 import usf.saav.common.BasicObject;
+import usf.saav.common.data.FloatStorage;
 import usf.saav.common.range.IntRange1D;
 import usf.saav.mesh.ConnectedComponentMesh;
+import usf.saav.mesh.GridTopology;
 import usf.saav.mesh.ScalarFieldMesh;
 import usf.saav.scalarfield.PersistenceSimplifier2D;
 import usf.saav.scalarfield.ScalarField2D;
+import usf.saav.scalarfield.ScalarFieldND;
 import usf.saav.scalarfield.Simplifier2D;
+import usf.saav.scalarfield.ThresholdSimplifier2D;
 import usf.saav.topology.PseudoContourTree;
+import usf.saav.topology.SimplificationMetric;
 
 public class TDAProcessor2D extends BasicObject {
 
 //	PersistenceSimplifier2D ps2d;
 	Simplifier2D s2d;
+	FloatStorage [] thresholded;
 	ScalarField2D slice;
+	GridTopology topo;
 
 	public TDAProcessor2D( ){
 		super(true);
@@ -44,9 +51,14 @@ public class TDAProcessor2D extends BasicObject {
 
 	public void process( FitsReader fits, IntRange1D xr, IntRange1D yr, int z, 
 	        float simplification, String metric ){
+		process( fits, xr, yr, z, new float[]{ simplification }, metric );
+	}
+
+	public void process( FitsReader fits, IntRange1D xr, IntRange1D yr, int z, 
+	        float [] levels, String metric ){
 
 		try {
-			process( fits.getSlice( xr,  yr,  z, 0 ), simplification, metric);
+			process( fits.getSlice( xr,  yr,  z, 0 ), levels, metric);
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(-1);
@@ -55,23 +67,62 @@ public class TDAProcessor2D extends BasicObject {
 	}
 
 	public void process( ScalarField2D _slice, float simplification, String metric ){
+		process( _slice, new float[]{ simplification }, metric );
+	}
+
+	/**
+	 * Builds the tree once and simplifies to every level, in ascending order.
+	 */
+	public void process( ScalarField2D _slice, float [] levels, String metric ){
 		
 		slice = _slice;
+		thresholded = null;
 
 		this.print_info_message("Constructing Mesh");
-		ConnectedComponentMesh cl = new ConnectedComponentMesh( new ScalarFieldMesh( slice ) );
+		// every slice of the same window shares its grid connectivity
+		if( topo == null || !topo.matches(slice) ) topo = GridTopology.create( slice );
+		ConnectedComponentMesh cl = new ConnectedComponentMesh( new ScalarFieldMesh( slice, topo ) );
 		this.print_info_message("Constructing Tree");
 		PseudoContourTree ct = new PseudoContourTree( cl );
 
 		System.out.println( "Regional Maximum Persistence: " + ct.getMaxPersistence() );
 
 		this.print_info_message("Simplifying Tree");
-		ct.setSimplificationLevel( simplification );
+		ct.setSimplificationLevel( levels[levels.length-1] );
 		ct.setSimplificationMetric( metric );
 		this.print_info_message("Simplfying Field");
 //		ps2d = new PersistenceSimplifier2D( slice, ct, cl, true );
-		s2d = new Simplifier2D(slice, ct, cl, simplification, metric, true);
+		s2d = new Simplifier2D(slice, ct, cl, levels, SimplificationMetric.get(metric), true, true);
+
+	}
+
+	/**
+	 * Simplifies persistence with ThresholdSimplifier2D, without building the
+	 * contour tree. Levels are fractions of the slice's value range.
+	 */
+	public void processThreshold( ScalarField2D _slice, float [] levels ){
+
+		slice = _slice;
+		s2d = null;
+
+		this.print_info_message("Constructing Mesh");
+		if( topo == null || !topo.matches(slice) ) topo = GridTopology.create( slice );
+		ConnectedComponentMesh cl = new ConnectedComponentMesh( new ScalarFieldMesh( slice, topo ) );
+
+		double [] range = ScalarFieldND.Default.getValueRange( slice );
+		this.print_info_message("Simplfying Field");
+		thresholded = new FloatStorage[levels.length];
+		for(int l = 0; l < levels.length; l++ ){
+			float threshold = (float)( levels[l]*(range[1]-range[0]) );
+			thresholded[l] = new ThresholdSimplifier2D( slice, cl, threshold, true, isVerbose() ).getStorage();
+		}
+	}
 
+	/**
+	 * Result for the given level of the last process() or processThreshold().
+	 */
+	public FloatStorage getStorage( int level ){
+		return ( thresholded != null ) ? thresholded[level] : s2d.getStorage(level);
 	}
 
 }
@@ -24,18 +24,23 @@ import java.io.IOException;
 
 import usf.saav.alma.data.fits.FitsReader;
 import usf.saav.common.BasicObject;
+import usf.saav.common.data.FloatStorage;
 import usf.saav.common.range.IntRange1D;
 import usf.saav.mesh.ConnectedComponentMesh;
 import usf.saav.mesh.ScalarFieldMesh;
 import usf.saav.scalarfield.PersistenceSimplifier3D;
 import usf.saav.scalarfield.ScalarField3D;
+import usf.saav.scalarfield.ScalarFieldND;
 import usf.saav.scalarfield.Simplifier3D;
+import usf.saav.scalarfield.ThresholdSimplifier3D;
 import usf.saav.topology.PseudoContourTree;
+import usf.saav.topology.SimplificationMetric;
 
 public class TDAProcessor3D extends BasicObject {
 
 //	PersistenceSimplifier3D ps3d;
 	Simplifier3D s3d;
+	FloatStorage [] thresholded;
 	ScalarField3D vol;
 
 	public TDAProcessor3D( ){
@@ -44,9 +49,14 @@ public class TDAProcessor3D extends BasicObject {
 
 	public void process( FitsReader fits, IntRange1D xr, IntRange1D yr, IntRange1D zr, 
 	        float simplification, String metric ){
+		process( fits, xr, yr, zr, new float[]{ simplification }, metric );
+	}
+
+	public void process( FitsReader fits, IntRange1D xr, IntRange1D yr, IntRange1D zr, 
+	        float [] levels, String metric ){
 
 		try {
-			process( fits.getVolume( xr,  yr,  zr, 0 ), simplification, metric );
+			process( fits.getVolume( xr,  yr,  zr, 0 ), levels, metric );
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(-1);
@@ -55,8 +65,16 @@ public class TDAProcessor3D extends BasicObject {
 	}
 
 	public void process( ScalarField3D _vol, float simplification, String metric ){
+		process( _vol, new float[]{ simplification }, metric );
+	}
+
+	/**
+	 * Builds the tree once and simplifies to every level, in ascending order.
+	 */
+	public void process( ScalarField3D _vol, float [] levels, String metric ){
 		
 		vol = _vol;
+		thresholded = null;
 
 		this.print_info_message("Constructing Mesh");
 		ConnectedComponentMesh cl = new ConnectedComponentMesh( new ScalarFieldMesh( vol ) );
@@ -66,12 +84,40 @@ public class TDAProcessor3D extends BasicObject {
 		System.out.println( "Regional Maximum Persistence: " + ct.getMaxPersistence() );
 
 		this.print_info_message("Simplifying Tree");
-		ct.setSimplificationLevel( simplification );
+		ct.setSimplificationLevel( levels[levels.length-1] );
 		ct.setSimplificationMetric( metric );
 		this.print_info_message("Simplfying Field");
 //		ps3d = new PersistenceSimplifier3D( vol, ct, cl, true );
-	    s3d = new Simplifier3D( vol, ct, cl, simplification, metric, true );
+	    s3d = new Simplifier3D( vol, ct, cl, levels, SimplificationMetric.get(metric), true, true );
+
+	}
+
+	/**
+	 * Simplifies persistence with ThresholdSimplifier3D, without building the
+	 * contour tree. Levels are fractions of the volume's value range.
+	 */
+	public void processThreshold( ScalarField3D _vol, float [] levels ){
+
+		vol = _vol;
+		s3d = null;
+
+		this.print_info_message("Constructing Mesh");
+		ConnectedComponentMesh cl = new ConnectedComponentMesh( new ScalarFieldMesh( vol ) );
+
+		double [] range = ScalarFieldND.Default.getValueRange( vol );
+		this.print_info_message("Simplfying Field");
+		thresholded = new FloatStorage[levels.length];
+		for(int l = 0; l < levels.length; l++ ){
+			float threshold = (float)( levels[l]*(range[1]-range[0]) );
+			thresholded[l] = new ThresholdSimplifier3D( vol, cl, threshold, true, isVerbose() ).getStorage();
+		}
+	}
 
+	/**
+	 * Result for the given level of the last process() or processThreshold().
+	 */
+	public FloatStorage getStorage( int level ){
+		return ( thresholded != null ) ? thresholded[level] : s3d.getStorage(level);
 	}
 
 }
@@ -29,11 +29,14 @@ import usf.saav.alma.drawing.ContourTreeDrawing;
 import usf.saav.alma.drawing.LabelDrawing;
 import usf.saav.alma.drawing.PersistenceDiagramDrawing;
 import usf.saav.alma.util.CoordinateSystem;
+import usf.saav.alma.util.ResultCache;
 import usf.saav.common.BasicObject;
+import usf.saav.common.data.FloatStorage;
 import usf.saav.common.mvc.ControllerComponent;
 import usf.saav.common.mvc.ViewComponent;
 import usf.saav.common.range.IntRange1D;
 import usf.saav.mesh.ConnectedComponentMesh;
+import usf.saav.mesh.GridTopology;
 import usf.saav.mesh.ScalarFieldMesh;
 import usf.saav.scalarfield.PersistenceSimplifier2D;
 import usf.saav.scalarfield.PersistenceSimplifier3D;
@@ -140,6 +143,9 @@ public class AlmaCT extends BasicObject {
 				}
 				model.updateConfigRanges( selRegion[0], selRegion[1], new IntRange1D(z0,z1) );
 				
+				// all slices in the stack share the same grid connectivity
+				GridTopology topo = new GridTopology( selRegion[0].length(), selRegion[1].length() );
+				
 				for (int cz = z0; cz <= z1; cz++ ){
 					try {
 						slice.put( cz, model.fits.getSlice( selRegion[0], selRegion[1], cz, 0) );
@@ -148,14 +154,12 @@ public class AlmaCT extends BasicObject {
 					}
 					if( stop ) return;
 					
-                    ScalarField2D writeslice = slice.get(cz);
-                    double[] valueRange = ScalarFieldND.Default.getValueRange(writeslice);
-                    if (valueRange[0] == 0 && valueRange[1] == 0) {
-                        continue;
-                    }
+					// slices, or selected regions, without a finite, non-zero value have no tree to build
+					if( !model.stats.isValid(cz) ) continue;
+					if( !ScalarFieldND.Default.isValidField( slice.get(cz) ) ) continue;
 					
 					print_info_message("Constructing Mesh");
-					cl.put( cz, new ConnectedComponentMesh( new ScalarFieldMesh( slice.get(cz) ) ) );
+					cl.put( cz, new ConnectedComponentMesh( new ScalarFieldMesh( slice.get(cz), topo ) ) );
 					if( stop ) return;
 					
 					print_info_message("Constructing Tree");
@@ -180,12 +184,36 @@ public class AlmaCT extends BasicObject {
 	}
 	
 	public void updateSimplifiedImage( ){
+		ResultCache cache = model.config.cache;
 		for( int cz : ct.keySet() ){
-			ps2d.put( cz, new PersistenceSimplifier2D( slice.get(cz), ct.get(cz), cl.get(cz), true ) );
+			PseudoContourTree t = ct.get(cz);
+			ResultCache.Key key = null;
+			if( cache != null ){
+				key = new ResultCache.Key("pair-2d").add( slice.get(cz) ).add( t.getSimplificationMetric() ).add( t.getSimplificationLevel() );
+				FloatStorage cached = cache.get( key );
+				if( cached != null ){
+					ps2d.put( cz, ResultCache.asField( slice.get(cz), cached ) );
+					((AlmaGL.Controller)controller).setUpdateSF();
+					continue;
+				}
+			}
+			PersistenceSimplifier2D simp = new PersistenceSimplifier2D( slice.get(cz), t, cl.get(cz), true );
+			ps2d.put( cz, simp );
+			if( cache != null ) cache.put( key, new FloatStorage.Array( toArray( simp ) ) );
 			((AlmaGL.Controller)controller).setUpdateSF();
 		}
 		if( vol != null ){
-			ScalarField3D sf3d = new PersistenceSimplifier3D(vol, pct, vcl, true);
+			ScalarField3D sf3d = null;
+			ResultCache.Key key = null;
+			if( cache != null ){
+				key = new ResultCache.Key("pair-3d").add( vol ).add( pct.getSimplificationMetric() ).add( pct.getSimplificationLevel() );
+				FloatStorage cached = cache.get( key );
+				if( cached != null ) sf3d = new ScalarField3D.StorageField( vol.getWidth(), vol.getHeight(), vol.getDepth(), cached );
+			}
+			if( sf3d == null ){
+				sf3d = new PersistenceSimplifier3D(vol, pct, vcl, true);
+				if( cache != null ) cache.put( key, new FloatStorage.Array( toArray( sf3d ) ) );
+			}
 			for(int z = 0; z < sf3d.getDepth(); z++ ){
 				ps2d.put( z+z0, new Extract2DFrom3D( sf3d, z ) );
 			}
@@ -193,6 +221,14 @@ public class AlmaCT extends BasicObject {
 		}
 	}
 	
+	private static float [] toArray( ScalarFieldND sf ){
+		float [] ret = new float[sf.getSize()];
+		for(int i = 0; i < ret.length; i++){
+			ret[i] = sf.getValue(i);
+		}
+		return ret;
+	}
+	
 	void stop( ){
 		if( computeThread != null ){
 			computeThread.stop = true;
@@ -21,11 +21,17 @@
 package usf.saav.alma.app.interactive;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import usf.saav.alma.app.TDAInteractive.MouseMode;
 import usf.saav.alma.data.processors.Composite2D;
-import usf.saav.alma.data.processors.LayeredVolume;
-import usf.saav.alma.data.processors.Moment0;
+import usf.saav.alma.data.processors.MipPyramid2D;
+import usf.saav.alma.data.processors.MomentMaps;
+import usf.saav.alma.data.processors.StackedVolume;
 import usf.saav.alma.data.processors.Subsample2D;
 import usf.saav.alma.data.processors.Subset2D;
 import usf.saav.alma.drawing.HistogramDrawing;
@@ -59,6 +65,12 @@ public class AlmaGL extends DefaultGLPanel {
 	private AlmaModel model;
 	
 	public static boolean COLORMAP_GLOBAL = false;
+	
+	/**
+	 * Reduction shown when zoomed out, and number of slice pyramids kept.
+	 */
+	public static MipPyramid2D.Mode MIP_MODE = MipPyramid2D.Mode.MAX;
+	public static int MIP_CACHE_SLICES = 16;
 
 	ScalarField2D currSlice;
 
@@ -69,6 +81,12 @@ public class AlmaGL extends DefaultGLPanel {
 	
 	AlmaCT currCT = null;
 
+	@SuppressWarnings("serial")
+	private Map<Integer,MipPyramid2D> mipCache = Collections.synchronizedMap( new LinkedHashMap<Integer,MipPyramid2D>( 16, 0.75f, true ){
+		@Override protected boolean removeEldestEntry( Map.Entry<Integer,MipPyramid2D> eldest ){ return size() > MIP_CACHE_SLICES; }
+	});
+	private Set<Integer> mipPending = Collections.synchronizedSet( new HashSet<Integer>() );
+
 	
 	public AlmaGL( AlmaModel _model, int width, int height ){
 		super(width, height);
@@ -103,6 +121,21 @@ public class AlmaGL extends DefaultGLPanel {
 		System.out.println("update slice");
 		currSlice = getSlice(model.monZ.get());
 		view_sf2d.set( new Subsample2D(currSlice, 4) );
+		buildPyramid( model.monZ.get(), currSlice );
+	}
+	
+	/**
+	 * Builds the mip pyramid of a slice in the background, then redraws.
+	 */
+	private void buildPyramid( final int z, final ScalarField2D slice ){
+		if( mipCache.containsKey(z) || !mipPending.add(z) ) return;
+		Thread t = new Thread( () -> {
+			mipCache.put( z, new MipPyramid2D( slice ) );
+			mipPending.remove(z);
+			if( controller != null ) ((Controller)controller).setUpdateSF();
+		});
+		t.setDaemon(true);
+		t.start();
 	}
 	
 	
@@ -163,7 +196,6 @@ public class AlmaGL extends DefaultGLPanel {
 			}
 			registerSubController( model.csCont, 15 );
 			
-			view_sf2d.addMonitor( hist2d, "setData" );
 			view_sf2d.addMonitor( sfv,    "setScalarField" );
 
 			model.csCont.addDragCallback( sfv, "setTranslation" );
@@ -232,7 +264,7 @@ public class AlmaGL extends DefaultGLPanel {
 			IntRange1D yr = new IntRange1D( (int)xy0[1], (int)xy1[1] );
 			
 			if (model.monShowM0.get()){
-				LayeredVolume vol = new LayeredVolume();
+				StackedVolume.Builder vol = new StackedVolume.Builder();
 				
 				//for( int cz = model.monZ0.get(); cz <= model.monZ1.get(); cz++ ){
 				for( int cz = model.monZ0.get(); cz <= model.monZ1.get(); cz+=8 ){
@@ -250,7 +282,8 @@ public class AlmaGL extends DefaultGLPanel {
 					
 					vol.addLayers( new Subsample2D( _sf2D, stepX, stepY ) );
 				}
-				view_sf2d.set( new Moment0(vol) );
+				view_sf2d.set( MomentMaps.compute( vol.build() ).getMoment0() );
+				hist2d.setData( view_sf2d.get() );
 				double [] r = ScalarFieldND.Default.getValueRange( view_sf2d.get() );
 				colormap.setRange( new FloatRange1D(r) );
 			}
@@ -268,10 +301,30 @@ public class AlmaGL extends DefaultGLPanel {
 				int stepX = (int)MathX.nextLargerPowerOf2( 2.0 * (double)_sf2D.getWidth()  / (double)winX.length() );
 				int stepY = (int)MathX.nextLargerPowerOf2( 2.0 * (double)_sf2D.getHeight() / (double)winY.length() );
 				
-				view_sf2d.set( new Subsample2D( _sf2D, stepX, stepY ) );
+				// the pyramid only covers the unsimplified slice
+				MipPyramid2D mip = mipCache.get( model.monZ.get() );
+				if( tmpSlice == currSlice && mip != null ){
+					view_sf2d.set( mip.getRegion( xr, yr, stepX, stepY, MIP_MODE ) );
+				}
+				else {
+					view_sf2d.set( new Subsample2D( _sf2D, stepX, stepY ) );
+				}
 	
+				// the slice statistics keep the histogram fixed while panning, simplified views are scanned,
+				// and the statistics bound simplified values too, keeping the colors fixed
+				int z = model.monZ.get();
+				if( tmpSlice != currSlice ){
+					hist2d.setData( view_sf2d.get() );
+				}
+				else if( model.stats.getFiniteCount(z) > 0 ){
+					hist2d.setHistogram( model.stats.getRange(z), model.stats.getHistogram(z) );
+				}
+				else {
+					hist2d.clear( );
+				}
+
 				// update the color maps
-				double [] r = ScalarFieldND.Default.getValueRange( view_sf2d.get() );
+				double [] r = model.stats.getValueRange( z );
 				if( COLORMAP_GLOBAL ){
 					FloatRange1D selRange = sf_range;
 					if( r[1] > r[0] ) selRange.expand( r );
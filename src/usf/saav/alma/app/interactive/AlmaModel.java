@@ -30,6 +30,7 @@ import usf.saav.alma.app.TDAInteractive.MouseMode;
 import usf.saav.alma.app.TDAInteractive.TreeDimension;
 import usf.saav.alma.data.fits.RawFitsReader;
 import usf.saav.alma.data.fits.SafeFitsReader;
+import usf.saav.alma.data.fits.SliceStatistics;
 import usf.saav.alma.util.CoordinateSystemController;
 import usf.saav.common.BasicObject;
 import usf.saav.common.monitoredvariables.MonitoredBoolean;
@@ -55,6 +56,7 @@ public class AlmaModel extends BasicObject {
     public MonitoredTrigger				monButton	  = new MonitoredTrigger( );
     
 	SafeFitsReader fits;
+	SliceStatistics stats;
 	
 
 	public CoordinateSystemController csCont;
@@ -68,6 +70,7 @@ public class AlmaModel extends BasicObject {
 		window = _window;
 		
 		fits = new SafeFitsReader( new RawFitsReader(config.filename, true), true );
+		stats = SliceStatistics.load( fits );
 		
 		monX.set(fits.getAxesSize()[0].middle());
 		monY.set(fits.getAxesSize()[1].middle());
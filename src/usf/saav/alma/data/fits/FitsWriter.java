@@ -10,6 +10,7 @@ import nom.tam.fits.FitsUtil;
 import nom.tam.fits.ImageHDU;
 import nom.tam.fits.common.FitsException;
 import nom.tam.util.BufferedFile;
+import usf.saav.common.data.FloatStorage;
 import usf.saav.scalarfield.ScalarField2D;
 
 public class FitsWriter {
@@ -35,20 +36,7 @@ public class FitsWriter {
 	}
 	
 	public void open( FitsReader fitsReader, String outfile ) throws IOException, FitsException{
-	    File file = fitsReader.getFile();
-	    fits = new Fits(file);
-	    
-	    try {
-	        while (true) {
-	            BasicHDU<?> hdu = fits.readHDU();
-	            if (hdu.getKernel() != null) {
-	                data = (float[][][]) hdu.getKernel();
-	                break;
-	            }
-	        }
-        } catch (Exception e) {
-            // TODO: handle exception
-        }
+	    open( fitsReader );
 	    
 //	    ImageHDU iHdu = (ImageHDU) fits.getHDU(1);
 //	    data = (float[][][]) iHdu.getKernel();
@@ -78,26 +66,68 @@ public class FitsWriter {
 
 		
 	}
+
+	/**
+	 * Loads the input cube without choosing an output, so save() can write
+	 * several outputs from the one cube in memory.
+	 */
+	public void open( FitsReader fitsReader ) throws IOException, FitsException{
+	    File file = fitsReader.getFile();
+	    fits = new Fits(file);
+	    
+	    try {
+	        while (true) {
+	            BasicHDU<?> hdu = fits.readHDU();
+	            if (hdu.getKernel() != null) {
+	                data = (float[][][]) hdu.getKernel();
+	                break;
+	            }
+	        }
+	        // the remaining HDUs too, so every save() writes them
+	        while( fits.readHDU() != null );
+        } catch (Exception e) {
+            // TODO: handle exception
+        }
+	}
+
+	/**
+	 * Writes the cube, with the slices written so far, to outfile. Can be
+	 * called repeatedly, e.g. once per simplification level.
+	 */
+	public void save( String outfile ) throws FitsException, IOException{
+		BufferedFile out = new BufferedFile(outfile, "rw", 16384);
+		try {
+			fits.write(out);
+		} finally {
+			out.close();
+		}
+	}
 	
 	public void writeSlice( ScalarField2D sf ) throws IOException{
 		// write out data cube by channel
-		for (int w = 0; w < SLICEWIDTH; ++w) {
-			for (int h = 0; h < SLICEHEIGHT; ++h) {
-				data[0][h][w] = sf.getValue(w, h);
-			}
+		for (int h = 0; h < SLICEHEIGHT; ++h) {
+			sf.getRegion(0, h, SLICEWIDTH, 1, data[0][h], 0);
 		}
 		bf.writeArray(data);
 	}
 	
    public void writeSlice( ScalarField2D sf, int d ) throws IOException{
         // write out data cube by channel
-        for (int w = 0; w < SLICEWIDTH; ++w) {
-            for (int h = 0; h < SLICEHEIGHT; ++h) {
-                data[d][h][w] = sf.getValue(w, h);
-            }
+        for (int h = 0; h < SLICEHEIGHT; ++h) {
+            sf.getRegion(0, h, SLICEWIDTH, 1, data[d][h], 0);
         }
     }
 
+	/**
+	 * Writes a w x h region of channel d starting at (x0,y0), read from src
+	 * beginning at offset in x-fastest order.
+	 */
+	public void writeSlice( FloatStorage src, long offset, int x0, int y0, int w, int h, int d ) throws IOException{
+		for (int y = 0; y < h; ++y) {
+			src.get( offset + (long)y*w, data[d][y0+y], x0, w );
+		}
+	}
+
 	public void close( ) throws FitsException, IOException{
 //	   FitsUtil.pad(bf, SLICEWIDTH*SLICEHEIGHT*DEPTH*WORDSIZE);
 	   fits.write(bf);
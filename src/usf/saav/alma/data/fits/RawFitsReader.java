@@ -499,6 +499,13 @@ public class RawFitsReader extends FitsReader.Default implements FitsReader {
 		 */
 		@Override public float getValue(int x, int y) { return data[y*width+x]; }
 
+		@Override public float [] getBackingArray() { return data; }
+
+		@Override
+		public void getRegion( int x0, int y0, int w, int h, float [] dst, int offset ){
+			copyRegion( data, 0, width, x0, y0, w, h, dst, offset );
+		}
+
 	}
 	
 
@@ -605,6 +612,15 @@ public class RawFitsReader extends FitsReader.Default implements FitsReader {
 		 */
 		@Override public float getValue(int x, int y, int z) { return data[z*width*height + y*width + x]; }
 
+		@Override public float [] getBackingArray() { return data; }
+
+		@Override
+		public void getRegion( int x0, int y0, int z0, int w, int h, int d, float [] dst, int offset ){
+			for(int z = 0; z < d; z++, offset += w*h){
+				ScalarField2D.Default.copyRegion( data, (z0+z)*width*height, width, x0, y0, w, h, dst, offset );
+			}
+		}
+
 	}
 
 }
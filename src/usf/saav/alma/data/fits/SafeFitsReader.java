@@ -22,6 +22,7 @@ package usf.saav.alma.data.fits;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import usf.saav.common.range.IntRange1D;
 import usf.saav.scalarfield.ScalarField2D;
@@ -169,6 +170,31 @@ public class SafeFitsReader extends FitsReader.Default implements FitsReader {
 			if( z < oz || z >= ez ) return Float.NaN;
 			return baseVolume.getValue(x-ox, y-oy, z-oz);
 		}
+
+		@Override
+		public float [] getBackingArray() {
+			if( ox != 0 || oy != 0 || oz != 0 || ex != rx.length() || ey != ry.length() || ez != rz.length() ) return null;
+			return baseVolume.getBackingArray();
+		}
+
+		@Override
+		public void getRegion( int x0, int y0, int z0, int w, int h, int d, float [] dst, int offset ){
+			int cx0 = Math.max( x0, ox ), cx1 = Math.min( x0+w, ex );
+			int cy0 = Math.max( y0, oy ), cy1 = Math.min( y0+h, ey );
+			int cz0 = Math.max( z0, oz ), cz1 = Math.min( z0+d, ez );
+			if( cx0 == x0 && cx1 == x0+w && cy0 == y0 && cy1 == y0+h && cz0 == z0 && cz1 == z0+d ){
+				baseVolume.getRegion( x0-ox, y0-oy, z0-oz, w, h, d, dst, offset );
+				return;
+			}
+			// partially outside the file, fill with NaN and copy the legal rows
+			Arrays.fill( dst, offset, offset+w*h*d, Float.NaN );
+			if( cx1 <= cx0 ) return;
+			for(int z = cz0; z < cz1; z++){
+				for(int y = cy0; y < cy1; y++){
+					baseVolume.getRegion( cx0-ox, y-oy, z-oz, cx1-cx0, 1, 1, dst, offset + ((z-z0)*h + (y-y0))*w + (cx0-x0) );
+				}
+			}
+		}
 	}
 
 	class SafeSlice extends ScalarField2D.Default {
@@ -215,6 +241,28 @@ public class SafeFitsReader extends FitsReader.Default implements FitsReader {
 			if( y < oy || y >= ey ) return Float.NaN;
 			return baseSlice.getValue(x-ox, y-oy);
 		}
+
+		@Override
+		public float [] getBackingArray() {
+			if( ox != 0 || oy != 0 || ex != rx.length() || ey != ry.length() ) return null;
+			return baseSlice.getBackingArray();
+		}
+
+		@Override
+		public void getRegion( int x0, int y0, int w, int h, float [] dst, int offset ){
+			int cx0 = Math.max( x0, ox ), cx1 = Math.min( x0+w, ex );
+			int cy0 = Math.max( y0, oy ), cy1 = Math.min( y0+h, ey );
+			if( cx0 == x0 && cx1 == x0+w && cy0 == y0 && cy1 == y0+h ){
+				baseSlice.getRegion( x0-ox, y0-oy, w, h, dst, offset );
+				return;
+			}
+			// partially outside the file, fill with NaN and copy the legal rows
+			Arrays.fill( dst, offset, offset+w*h, Float.NaN );
+			if( cx1 <= cx0 ) return;
+			for(int y = cy0; y < cy1; y++){
+				baseSlice.getRegion( cx0-ox, y-oy, cx1-cx0, 1, dst, offset + (y-y0)*w + (cx0-x0) );
+			}
+		}
 	}
 
     class SafeMask extends ScalarField2D.Default {
@@ -0,0 +1,277 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.fits;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import usf.saav.alma.util.ResultCache;
+import usf.saav.common.BasicObject;
+import usf.saav.common.ParallelX;
+import usf.saav.common.SystemX;
+import usf.saav.common.range.FloatRange1D;
+import usf.saav.common.range.IntRange1D;
+import usf.saav.scalarfield.ScalarField3D;
+
+/**
+ * Per-slice statistics of a cube: minimum, maximum, mean, finite, zero and
+ * NaN counts, and a coarse histogram over each slice's own range. The index is
+ * built in one pass when the cube is opened and saved next to it (or in the
+ * temp directory) as a sidecar, which is reused while the cube is unchanged.
+ * NaN and infinite samples are not counted as finite.
+ */
+public class SliceStatistics extends BasicObject {
+
+	public static final int  BINS      = 256;
+	public static final long BAND_SIZE = 1L<<24;
+
+	private static final int MAGIC   = 0x41535331;	// "ASS1"
+	private static final int HEADER  = 40;
+	private static final int RECORD  = 8*6 + 8*BINS;
+
+	private int width, height, depth;
+	private float  [] min, max;
+	private double [] mean;
+	private long   [] finite, zero, nan;
+	private long   [][] hist;
+
+	private SliceStatistics( int width, int height, int depth ){
+		super(true);
+		this.width  = width;
+		this.height = height;
+		this.depth  = depth;
+		min    = new float[depth];
+		max    = new float[depth];
+		mean   = new double[depth];
+		finite = new long[depth];
+		zero   = new long[depth];
+		nan    = new long[depth];
+		hist   = new long[depth][BINS];
+	}
+
+	/**
+	 * Reads the sidecar of the cube if it is current, otherwise computes the
+	 * statistics of the first plane and writes the sidecar.
+	 */
+	public static SliceStatistics load( FitsReader fits ) throws IOException {
+		IntRange1D [] axes = fits.getAxesSize();
+		int depth = ( fits.getAxisCount() >= 3 ) ? axes[2].length() : 1;
+		SliceStatistics ret = new SliceStatistics( axes[0].length(), axes[1].length(), depth );
+
+		File file = fits.getFile();
+		File [] sidecars = { getSidecar( file ), getTempSidecar( file ) };
+		for( File sc : sidecars ){
+			if( ret.read( sc, file ) ){
+				ret.print_info_message( "Using slice statistics " + sc );
+				return ret;
+			}
+		}
+
+		ret.compute( fits );
+		for( File sc : sidecars ){
+			if( ret.write( sc, file ) ) break;
+		}
+		return ret;
+	}
+
+	public static File getSidecar( File cube ){
+		return new File( cube.getPath() + ".stats" );
+	}
+
+	private static File getTempSidecar( File cube ){
+		String key = new ResultCache.Key( "slice-stats" ).add( cube.getAbsolutePath() ).toString();
+		return new File( SystemX.getTempDirectory(), cube.getName() + "-" + key.substring(0,16) + ".stats" );
+	}
+
+
+	public int getWidth( ){ return width; }
+	public int getHeight( ){ return height; }
+	public int getDepth( ){ return depth; }
+
+	public float  getMinimum( int z ){ return min[z]; }
+	public float  getMaximum( int z ){ return max[z]; }
+	public double getMean( int z ){ return mean[z]; }
+	public long   getFiniteCount( int z ){ return finite[z]; }
+	public long   getZeroCount( int z ){ return zero[z]; }
+	public long   getNaNCount( int z ){ return nan[z]; }
+
+	/**
+	 * Counts over BINS equal bins spanning [getMinimum(z), getMaximum(z)].
+	 */
+	public long [] getHistogram( int z ){ return hist[z]; }
+
+	/**
+	 * True if the slice holds a finite, non-zero value, the same test as
+	 * ScalarFieldND.Default.isValidField.
+	 */
+	public boolean isValid( int z ){
+		return finite[z] > zero[z];
+	}
+
+	/**
+	 * Range of the finite values, as ScalarFieldND.Default.getValueRange.
+	 */
+	public double [] getValueRange( int z ){
+		if( finite[z] == 0 ) return new double[]{ Double.MAX_VALUE, -Double.MAX_VALUE };
+		return new double[]{ min[z], max[z] };
+	}
+
+	public double [] getValueRange( IntRange1D z_range ){
+		double [] ret = { Double.MAX_VALUE, -Double.MAX_VALUE };
+		for( int z = z_range.start(); z <= z_range.end(); z++ ){
+			if( z < 0 || z >= depth || finite[z] == 0 ) continue;
+			ret[0] = Math.min( ret[0], min[z] );
+			ret[1] = Math.max( ret[1], max[z] );
+		}
+		return ret;
+	}
+
+	public FloatRange1D getRange( int z ){
+		return new FloatRange1D( min[z], max[z] );
+	}
+
+
+	/**
+	 * Reads the cube in bands of slices, computing the slices of a band in
+	 * parallel.
+	 */
+	private void compute( FitsReader fits ) throws IOException {
+		print_info_message( "Computing slice statistics" );
+		final int sliceSize = width*height;
+		int band = (int)Math.max( 1, Math.min( depth, BAND_SIZE / Math.max( 1, sliceSize ) ) );
+		IntRange1D [] axes = fits.getAxesSize();
+		for( int z0 = 0; z0 < depth; z0 += band ){
+			final int bz = z0;
+			final int bd = Math.min( band, depth-z0 );
+			final float [] vals;
+			if( fits.getAxisCount() >= 3 ){
+				ScalarField3D vol = fits.getVolume( axes[0], axes[1], new IntRange1D( axes[2].start()+bz, axes[2].start()+bz+bd-1 ), 0 );
+				float [] arr = vol.getBackingArray();
+				if( arr == null ){
+					arr = new float[sliceSize*bd];
+					vol.getRegion( 0, 0, 0, width, height, bd, arr, 0 );
+				}
+				vals = arr;
+			}
+			else {
+				vals = new float[sliceSize];
+				fits.getSlice( 0, 0 ).getRegion( 0, 0, width, height, vals, 0 );
+			}
+			ParallelX.forEach( bd, (i) -> computeSlice( bz+i, vals, i*sliceSize, sliceSize ) );
+		}
+	}
+
+	private void computeSlice( int z, float [] vals, int off, int len ){
+		float lo = Float.MAX_VALUE, hi = -Float.MAX_VALUE;
+		double sum = 0;
+		long cnt = 0, zeros = 0, nans = 0;
+		for( int i = off; i < off+len; i++ ){
+			float v = vals[i];
+			if( Float.isNaN(v) ){ nans++; continue; }
+			if( Float.isInfinite(v) ) continue;
+			if( v == 0 ) zeros++;
+			if( v < lo ) lo = v;
+			if( v > hi ) hi = v;
+			sum += v;
+			cnt++;
+		}
+
+		long [] h = hist[z];
+		if( cnt > 0 ){
+			double scale = ( hi > lo ) ? BINS / ((double)hi - lo) : 0;
+			for( int i = off; i < off+len; i++ ){
+				float v = vals[i];
+				if( Float.isNaN(v) || Float.isInfinite(v) ) continue;
+				h[ Math.min( BINS-1, (int)((v-lo)*scale) ) ]++;
+			}
+		}
+
+		min[z]    = ( cnt > 0 ) ? lo : Float.NaN;
+		max[z]    = ( cnt > 0 ) ? hi : Float.NaN;
+		mean[z]   = ( cnt > 0 ) ? sum / cnt : Double.NaN;
+		finite[z] = cnt;
+		zero[z]   = zeros;
+		nan[z]    = nans;
+	}
+
+
+	private boolean read( File sc, File cube ){
+		if( !sc.exists() ) return false;
+		try ( RandomAccessFile raf = new RandomAccessFile( sc, "r" ) ){
+			FileChannel chan = raf.getChannel();
+			if( chan.size() != HEADER + (long)depth*RECORD ) return false;
+			ByteBuffer bb = ByteBuffer.allocate( (int)chan.size() ).order( ByteOrder.LITTLE_ENDIAN );
+			while( bb.hasRemaining() ){
+				if( chan.read( bb ) < 0 ) return false;
+			}
+			bb.flip();
+			if( bb.getInt() != MAGIC || bb.getInt() != BINS ) return false;
+			if( bb.getLong() != cube.length() || bb.getLong() != cube.lastModified() ) return false;
+			if( bb.getInt() != width || bb.getInt() != height || bb.getInt() != depth ) return false;
+			bb.getInt();
+			for( int z = 0; z < depth; z++ ){
+				min[z]    = (float)bb.getDouble();
+				max[z]    = (float)bb.getDouble();
+				mean[z]   = bb.getDouble();
+				finite[z] = bb.getLong();
+				zero[z]   = bb.getLong();
+				nan[z]    = bb.getLong();
+				for( int b = 0; b < BINS; b++ ) hist[z][b] = bb.getLong();
+			}
+			return true;
+		} catch (IOException e) {
+			print_warning_message( "Unable to read slice statistics " + sc + ": " + e.getMessage() );
+			return false;
+		}
+	}
+
+	private boolean write( File sc, File cube ){
+		File tmp = new File( sc.getPath() + ".tmp" );
+		try ( RandomAccessFile raf = new RandomAccessFile( tmp, "rw" ) ){
+			raf.setLength( 0 );
+			ByteBuffer bb = ByteBuffer.allocate( HEADER + depth*RECORD ).order( ByteOrder.LITTLE_ENDIAN );
+			bb.putInt( MAGIC ).putInt( BINS ).putLong( cube.length() ).putLong( cube.lastModified() );
+			bb.putInt( width ).putInt( height ).putInt( depth ).putInt( 0 );
+			for( int z = 0; z < depth; z++ ){
+				bb.putDouble( min[z] ).putDouble( max[z] ).putDouble( mean[z] );
+				bb.putLong( finite[z] ).putLong( zero[z] ).putLong( nan[z] );
+				for( int b = 0; b < BINS; b++ ) bb.putLong( hist[z][b] );
+			}
+			bb.flip();
+			FileChannel chan = raf.getChannel();
+			while( bb.hasRemaining() ) chan.write( bb );
+		} catch (IOException e) {
+			tmp.delete();
+			return false;
+		}
+		if( !tmp.renameTo( sc ) ){
+			sc.delete();
+			if( !tmp.renameTo( sc ) ){ tmp.delete(); return false; }
+		}
+		print_info_message( "Saved slice statistics " + sc );
+		return true;
+	}
+
+}
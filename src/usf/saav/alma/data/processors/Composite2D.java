@@ -69,4 +69,15 @@ public class Composite2D extends ScalarField2D.Default implements ScalarField2D
 		}
 		return base.getValue(x, y);
 	}
+
+	@Override
+	public void getRegion( int x0, int y0, int w, int h, float [] dst, int offset ){
+		base.getRegion( x0, y0, w, h, dst, offset );
+		int cx0 = Math.max( x0, offX ), cx1 = Math.min( x0+w, offX+composite.getWidth() );
+		int cy0 = Math.max( y0, offY ), cy1 = Math.min( y0+h, offY+composite.getHeight() );
+		if( cx1 <= cx0 ) return;
+		for(int y = cy0; y < cy1; y++){
+			composite.getRegion( cx0-offX, y-offY, cx1-cx0, 1, dst, offset + (y-y0)*w + (cx0-x0) );
+		}
+	}
 }
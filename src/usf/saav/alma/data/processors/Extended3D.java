@@ -45,4 +45,12 @@ public class Extended3D extends ScalarField3D.Default implements ScalarField3D {
 		}
 		return extension.getValue(x, y, z-base.getDepth() );
 	}
+
+	// split at the seam so each part goes through its own bulk read
+	@Override
+	public void getRegion( int x0, int y0, int z0, int w, int h, int d, float [] dst, int offset ){
+		int nb = Math.max( 0, Math.min( d, base.getDepth()-z0 ) );
+		if( nb > 0 ) base.getRegion( x0, y0, z0, w, h, nb, dst, offset );
+		if( nb < d ) extension.getRegion( x0, y0, z0+nb-base.getDepth(), w, h, d-nb, dst, offset + nb*w*h );
+	}
 }
@@ -59,4 +59,9 @@ public class Extract2DFrom3D extends ScalarField2D.Default implements ScalarFiel
 	 */
 	@Override public float getValue(int x, int y) { return sf.getValue(x, y, layer); }
 
+	@Override
+	public void getRegion( int x0, int y0, int w, int h, float [] dst, int offset ){
+		sf.getRegion( x0, y0, layer, w, h, 1, dst, offset );
+	}
+
 }
@@ -0,0 +1,209 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import java.util.Arrays;
+
+import usf.saav.scalarfield.ScalarField1D;
+
+/**
+ * Gaussian smoothing of a 1D field, e.g. a spectrum. Smoothing is by
+ * normalized convolution: only valid samples are weighted, so NaN/inf
+ * samples neither spread nor pull values towards zero, and stay NaN in the
+ * result. The kernel is truncated at TRUNCATE sigma.
+ */
+public class GaussianFilter1D extends ScalarField1D.ArrayField {
+
+	/**
+	 * Kernel radius, in samples, above which lines are convolved by FFT.
+	 */
+	public static final int FFT_RADIUS = 32;
+	public static final double TRUNCATE = 4.0;
+
+	public GaussianFilter1D( ScalarField1D src, double sigma ){
+		super( filter( src, sigma ) );
+	}
+
+	private static float [] filter( ScalarField1D src, double sigma ){
+		int n = src.getSize();
+		float [] vals = new float[n];
+		for(int i = 0; i < n; i++){
+			vals[i] = src.getValue(i);
+		}
+		double [] num = new double[n];
+		double [] den = new double[n];
+		load( vals, 0, 1, num, den, n );
+		new Convolver( sigma, n ).convolve( num, den );
+		store( vals, 0, 1, num, den, n );
+		return vals;
+	}
+
+	/**
+	 * Splits n samples of vals, starting at offset and stride apart, into
+	 * weighted values and weights.
+	 */
+	static void load( float [] vals, int offset, int stride, double [] num, double [] den, int n ){
+		for(int i = 0; i < n; i++, offset += stride){
+			float v = vals[offset];
+			boolean valid = !Float.isNaN(v) && !Float.isInfinite(v);
+			num[i] = valid ? v : 0;
+			den[i] = valid ? 1 : 0;
+		}
+	}
+
+	/**
+	 * Writes the normalized values back over the valid samples.
+	 */
+	static void store( float [] vals, int offset, int stride, double [] num, double [] den, int n ){
+		for(int i = 0; i < n; i++, offset += stride){
+			float v = vals[offset];
+			if( Float.isNaN(v) || Float.isInfinite(v) ) continue;
+			vals[offset] = (float)( num[i]/den[i] );
+		}
+	}
+
+
+	/**
+	 * Convolves lines of a fixed length with a Gaussian, directly for small
+	 * kernels and by zero-padded FFT for kernels wider than FFT_RADIUS. Holds
+	 * scratch space, so each thread needs its own.
+	 */
+	public static class Convolver {
+		private int n, radius;
+		private double [] kernel;	// weights for offsets 0..radius
+		private int fftN = 0;
+		private double [] spec;		// kernel spectrum, real as the kernel is symmetric
+		private double [] cos, sin;
+		private double [] re, im;
+
+		public Convolver( double sigma, int n ){
+			this.n = n;
+			// offsets beyond the line length never reach a sample
+			radius = ( sigma > 0 ) ? (int)Math.min( Math.ceil( TRUNCATE*sigma ), Math.max( 0, n-1 ) ) : 0;
+			kernel = new double[radius+1];
+			for(int j = 0; j <= radius; j++){
+				kernel[j] = Math.exp( -(double)j*j / (2*sigma*sigma) );
+			}
+
+			if( radius > FFT_RADIUS ){
+				// padding of radius on either end keeps the circular convolution from wrapping
+				fftN = Integer.highestOneBit( n+radius-1 ) << 1;
+				cos = new double[fftN/2];
+				sin = new double[fftN/2];
+				for(int k = 0; k < fftN/2; k++){
+					cos[k] = Math.cos( 2*Math.PI*k/fftN );
+					sin[k] = Math.sin( 2*Math.PI*k/fftN );
+				}
+				re = new double[fftN];
+				im = new double[fftN];
+				re[0] = kernel[0];
+				for(int j = 1; j <= radius; j++){
+					re[j] = re[fftN-j] = kernel[j];
+				}
+				fft( re, im, false );
+				spec = re.clone();
+			}
+			else {
+				re = new double[n];
+				im = new double[n];
+			}
+		}
+
+		public int getRadius( ){ return radius; }
+		public boolean isFFT( ){ return fftN > 0; }
+
+		/**
+		 * Convolves both lines in place. The two real lines travel as the real
+		 * and imaginary parts of a single complex FFT.
+		 */
+		public void convolve( double [] num, double [] den ){
+			if( radius == 0 ) return;
+			if( fftN > 0 ){
+				System.arraycopy( num, 0, re, 0, n );
+				System.arraycopy( den, 0, im, 0, n );
+				Arrays.fill( re, n, fftN, 0 );
+				Arrays.fill( im, n, fftN, 0 );
+				fft( re, im, false );
+				for(int i = 0; i < fftN; i++){
+					re[i] *= spec[i];
+					im[i] *= spec[i];
+				}
+				fft( re, im, true );
+				System.arraycopy( re, 0, num, 0, n );
+				System.arraycopy( im, 0, den, 0, n );
+				return;
+			}
+			for(int i = 0; i < n; i++){
+				double s = kernel[0]*num[i];
+				double t = kernel[0]*den[i];
+				int j0 = Math.min( radius, i ), j1 = Math.min( radius, n-1-i );
+				for(int j = 1; j <= j0; j++){
+					s += kernel[j]*num[i-j];
+					t += kernel[j]*den[i-j];
+				}
+				for(int j = 1; j <= j1; j++){
+					s += kernel[j]*num[i+j];
+					t += kernel[j]*den[i+j];
+				}
+				re[i] = s;
+				im[i] = t;
+			}
+			System.arraycopy( re, 0, num, 0, n );
+			System.arraycopy( im, 0, den, 0, n );
+		}
+
+		// iterative radix-2 FFT, the inverse includes the 1/N scale
+		private void fft( double [] re, double [] im, boolean inverse ){
+			int N = fftN;
+			for(int i = 1, j = 0; i < N; i++){
+				int bit = N >> 1;
+				for( ; (j & bit) != 0; bit >>= 1 ) j ^= bit;
+				j ^= bit;
+				if( i < j ){
+					double t = re[i]; re[i] = re[j]; re[j] = t;
+					t = im[i]; im[i] = im[j]; im[j] = t;
+				}
+			}
+			for(int len = 2; len <= N; len <<= 1){
+				int half = len >> 1, step = N / len;
+				for(int i = 0; i < N; i += len){
+					for(int k = 0; k < half; k++){
+						double wr = cos[k*step];
+						double wi = inverse ? sin[k*step] : -sin[k*step];
+						int a = i+k, b = a+half;
+						double xr = re[b]*wr - im[b]*wi;
+						double xi = re[b]*wi + im[b]*wr;
+						re[b] = re[a]-xr;
+						im[b] = im[a]-xi;
+						re[a] += xr;
+						im[a] += xi;
+					}
+				}
+			}
+			if( inverse ){
+				for(int i = 0; i < N; i++){
+					re[i] /= N;
+					im[i] /= N;
+				}
+			}
+		}
+	}
+}
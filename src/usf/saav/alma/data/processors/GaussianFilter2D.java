@@ -0,0 +1,78 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import usf.saav.common.ParallelX;
+import usf.saav.scalarfield.ScalarField2D;
+
+/**
+ * Gaussian smoothing of a slice, separable into row and column passes of
+ * GaussianFilter1D.Convolver. Like GaussianFilter1D, it uses normalized
+ * convolution and keeps invalid samples NaN.
+ */
+public class GaussianFilter2D extends ScalarField2D.ArrayField {
+
+	private ScalarField2D src;
+
+	public GaussianFilter2D( ScalarField2D src, double sigma ){
+		super( src.getWidth(), src.getHeight(), filter( src, sigma ) );
+		this.src = src;
+	}
+
+	@Override public double[] getCoordinate(int x, int y) { return src.getCoordinate(x, y); }
+
+	private static float [] filter( ScalarField2D src, final double sigma ){
+		final int w = src.getWidth(), h = src.getHeight();
+		final float [] vals = new float[w*h];
+		src.getRegion( 0, 0, w, h, vals, 0 );
+		final float [] num = new float[w*h];
+		final float [] den = new float[w*h];
+
+		// rows, from the samples
+		ParallelX.forEachChunk( h, ParallelX.getChunkCount( h, 8 ), (c,start,end) -> {
+			GaussianFilter1D.Convolver cv = new GaussianFilter1D.Convolver( sigma, w );
+			double [] ln = new double[w], ld = new double[w];
+			for(int y = start; y < end; y++){
+				GaussianFilter1D.load( vals, y*w, 1, ln, ld, w );
+				cv.convolve( ln, ld );
+				for(int x = 0; x < w; x++){
+					num[y*w+x] = (float)ln[x];
+					den[y*w+x] = (float)ld[x];
+				}
+			}
+		});
+
+		// columns, from the row sums
+		ParallelX.forEachChunk( w, ParallelX.getChunkCount( w, 8 ), (c,start,end) -> {
+			GaussianFilter1D.Convolver cv = new GaussianFilter1D.Convolver( sigma, h );
+			double [] ln = new double[h], ld = new double[h];
+			for(int x = start; x < end; x++){
+				for(int y = 0; y < h; y++){
+					ln[y] = num[y*w+x];
+					ld[y] = den[y*w+x];
+				}
+				cv.convolve( ln, ld );
+				GaussianFilter1D.store( vals, x, w, ln, ld, h );
+			}
+		});
+		return vals;
+	}
+}
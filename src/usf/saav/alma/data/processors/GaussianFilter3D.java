@@ -0,0 +1,95 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import usf.saav.common.ParallelX;
+import usf.saav.common.data.FloatStorage;
+import usf.saav.scalarfield.ScalarField3D;
+
+/**
+ * Gaussian smoothing of a volume with separate spatial and spectral widths,
+ * as separable x, y and z passes of GaussianFilter1D.Convolver. Slices are
+ * smoothed spatially in parallel, then spectra in parallel. Like
+ * GaussianFilter1D, it uses normalized convolution and keeps invalid samples
+ * NaN. The volume must fit in an array.
+ */
+public class GaussianFilter3D extends ScalarField3D.StorageField {
+
+	public GaussianFilter3D( ScalarField3D src, double sigmaXY, double sigmaZ ){
+		super( src.getWidth(), src.getHeight(), src.getDepth(), filter( src, sigmaXY, sigmaZ ) );
+	}
+
+	private static FloatStorage filter( ScalarField3D src, final double sigmaXY, final double sigmaZ ){
+		final int w = src.getWidth(), h = src.getHeight(), d = src.getDepth();
+		final int size = w*h;
+		final float [] vals = new float[src.getSize()];
+		src.getRegion( 0, 0, 0, w, h, d, vals, 0 );
+		final float [] num = new float[vals.length];
+		final float [] den = new float[vals.length];
+
+		ParallelX.forEachChunk( d, ParallelX.getChunkCount( d, 1 ), (c,start,end) -> {
+			GaussianFilter1D.Convolver cx = new GaussianFilter1D.Convolver( sigmaXY, w );
+			GaussianFilter1D.Convolver cy = new GaussianFilter1D.Convolver( sigmaXY, h );
+			double [] xn = new double[w], xd = new double[w];
+			double [] yn = new double[h], yd = new double[h];
+			for(int z = start; z < end; z++){
+				int base = z*size;
+				for(int y = 0; y < h; y++){
+					GaussianFilter1D.load( vals, base+y*w, 1, xn, xd, w );
+					cx.convolve( xn, xd );
+					for(int x = 0; x < w; x++){
+						num[base+y*w+x] = (float)xn[x];
+						den[base+y*w+x] = (float)xd[x];
+					}
+				}
+				for(int x = 0; x < w; x++){
+					for(int y = 0; y < h; y++){
+						yn[y] = num[base+y*w+x];
+						yd[y] = den[base+y*w+x];
+					}
+					cy.convolve( yn, yd );
+					for(int y = 0; y < h; y++){
+						num[base+y*w+x] = (float)yn[y];
+						den[base+y*w+x] = (float)yd[y];
+					}
+				}
+			}
+		});
+
+		ParallelX.forEachChunk( size, ParallelX.getChunkCount( size, 64 ), (c,start,end) -> {
+			GaussianFilter1D.Convolver cz = new GaussianFilter1D.Convolver( sigmaZ, d );
+			double [] zn = new double[d], zd = new double[d];
+			for(int i = start; i < end; i++){
+				for(int z = 0; z < d; z++){
+					zn[z] = num[z*size+i];
+					zd[z] = den[z*size+i];
+				}
+				cz.convolve( zn, zd );
+				GaussianFilter1D.store( vals, i, size, zn, zd, d );
+			}
+		});
+
+		if( vals.length < FloatStorage.OFFHEAP_THRESHOLD ) return new FloatStorage.Array( vals );
+		FloatStorage ret = FloatStorage.allocate( vals.length );
+		ret.set( 0, vals, 0, vals.length );
+		return ret;
+	}
+}
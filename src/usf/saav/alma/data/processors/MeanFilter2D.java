@@ -0,0 +1,123 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import usf.saav.common.ParallelX;
+import usf.saav.scalarfield.ScalarField2D;
+
+/**
+ * Box mean of a slice over a (2*radius+1)^2 window, clipped at the edges.
+ * Window sums come from a summed-area table, so the cost per pixel does not
+ * depend on the radius. NaN and infinite samples are ignored; a window
+ * without valid samples is NaN.
+ */
+public class MeanFilter2D extends ScalarField2D.ArrayField {
+
+	private ScalarField2D src;
+
+	public MeanFilter2D( ScalarField2D src, int radius ){
+		super( src.getWidth(), src.getHeight(), filter( src, radius ) );
+		this.src = src;
+	}
+
+	@Override public double[] getCoordinate(int x, int y) { return src.getCoordinate(x, y); }
+
+	private static float [] filter( ScalarField2D src, int radius ){
+		int w = src.getWidth(), h = src.getHeight();
+		float [] vals = new float[w*h];
+		src.getRegion( 0, 0, w, h, vals, 0 );
+
+		SummedArea sat = new SummedArea( w, h );
+		sat.build( vals );
+		double [] sum = new double[w*h];
+		int [] cnt = new int[w*h];
+		sat.accumulate( radius, 1, sum, cnt );
+		for(int i = 0; i < vals.length; i++){
+			vals[i] = ( cnt[i] == 0 ) ? Float.NaN : (float)( sum[i]/cnt[i] );
+		}
+		return vals;
+	}
+
+
+	/**
+	 * Summed-area table of the valid samples of a slice and their count.
+	 * Can be rebuilt for further slices of the same size.
+	 */
+	public static class SummedArea {
+		private int w, h, W;
+		private double [] s;
+		private int [] c;
+
+		public SummedArea( int w, int h ){
+			this.w = w;
+			this.h = h;
+			this.W = w+1;
+			this.s = new double[W*(h+1)];
+			this.c = new int[W*(h+1)];
+		}
+
+		public void build( final float [] vals ){
+			// row prefix sums, then column prefix sums over strips of columns
+			ParallelX.forEachChunk( h, ParallelX.getChunkCount( h, 16 ), (k,start,end) -> {
+				for(int y = start; y < end; y++){
+					double rs = 0;
+					int rc = 0;
+					for(int x = 0; x < w; x++){
+						float v = vals[y*w+x];
+						if( !Float.isNaN(v) && !Float.isInfinite(v) ){
+							rs += v;
+							rc++;
+						}
+						s[(y+1)*W+x+1] = rs;
+						c[(y+1)*W+x+1] = rc;
+					}
+				}
+			});
+			ParallelX.forEachChunk( W, ParallelX.getChunkCount( W, 256 ), (k,start,end) -> {
+				for(int y = 2; y <= h; y++){
+					for(int x = start; x < end; x++){
+						s[y*W+x] += s[(y-1)*W+x];
+						c[y*W+x] += c[(y-1)*W+x];
+					}
+				}
+			});
+		}
+
+		/**
+		 * Adds sign times the sum and count of valid samples in each pixel's
+		 * window into sum and cnt.
+		 */
+		public void accumulate( final int radius, final int sign, final double [] sum, final int [] cnt ){
+			ParallelX.forEachChunk( h, ParallelX.getChunkCount( h, 16 ), (k,start,end) -> {
+				for(int y = start; y < end; y++){
+					int y0 = Math.max( 0, y-radius ) * W;
+					int y1 = Math.min( h, y+radius+1 ) * W;
+					for(int x = 0; x < w; x++){
+						int x0 = Math.max( 0, x-radius );
+						int x1 = Math.min( w, x+radius+1 );
+						sum[y*w+x] += sign * ( s[y1+x1] - s[y0+x1] - s[y1+x0] + s[y0+x0] );
+						cnt[y*w+x] += sign * ( c[y1+x1] - c[y0+x1] - c[y1+x0] + c[y0+x0] );
+					}
+				}
+			});
+		}
+	}
+}
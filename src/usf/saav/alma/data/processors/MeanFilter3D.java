@@ -0,0 +1,75 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import usf.saav.common.ParallelX;
+import usf.saav.common.data.FloatStorage;
+import usf.saav.scalarfield.ScalarField3D;
+
+/**
+ * Box mean of a volume over a (2*radius+1)^3 window, clipped at the edges.
+ * Each slice's 2D window sums come from a summed-area table and are added
+ * into a running sum as the slice enters the window and subtracted as it
+ * leaves, so the cost per voxel does not depend on the radius and only a few
+ * slices are held in memory. NaN and infinite samples are ignored.
+ */
+public class MeanFilter3D extends ScalarField3D.StorageField {
+
+	public MeanFilter3D( ScalarField3D src, int radius ){
+		super( src.getWidth(), src.getHeight(), src.getDepth(), filter( src, radius ) );
+	}
+
+	private static FloatStorage filter( ScalarField3D src, int radius ){
+		final int w = src.getWidth(), h = src.getHeight(), d = src.getDepth();
+		final int size = w*h;
+		FloatStorage ret = FloatStorage.allocate( (long)size*d );
+
+		MeanFilter2D.SummedArea sat = new MeanFilter2D.SummedArea( w, h );
+		final double [] sum = new double[size];
+		final int [] cnt = new int[size];
+		final float [] slice = new float[size];
+
+		// slice zz enters the window of output slice zz-radius, slice zz-2*radius leaves after it
+		for(int zz = 0; zz < d+radius; zz++){
+			if( zz < d ){
+				src.getRegion( 0, 0, zz, w, h, 1, slice, 0 );
+				sat.build( slice );
+				sat.accumulate( radius, 1, sum, cnt );
+			}
+			int z = zz-radius;
+			if( z < 0 ) continue;
+
+			ParallelX.forEachChunk( size, ParallelX.getChunkCount( size, 1<<14 ), (c,start,end) -> {
+				for(int i = start; i < end; i++){
+					slice[i] = ( cnt[i] == 0 ) ? Float.NaN : (float)( sum[i]/cnt[i] );
+				}
+			});
+			ret.set( (long)z*size, slice, 0, size );
+
+			if( z-radius >= 0 ){
+				src.getRegion( 0, 0, z-radius, w, h, 1, slice, 0 );
+				sat.build( slice );
+				sat.accumulate( radius, -1, sum, cnt );
+			}
+		}
+		return ret;
+	}
+}
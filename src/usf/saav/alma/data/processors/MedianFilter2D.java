@@ -0,0 +1,234 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import java.util.Arrays;
+
+import usf.saav.common.ParallelX;
+import usf.saav.scalarfield.ScalarField2D;
+
+/**
+ * Median of a slice over a (2*radius+1)^2 window, clipped at the edges. The
+ * window slides along each row (Huang), adding and removing one column of
+ * samples per step in a cumulative histogram of the samples' value ranks, so
+ * the cost per pixel grows with the radius rather than the window area. The
+ * median of n valid samples is the (n/2)-th smallest, as in
+ * MedianFilterField. NaN and infinite samples are ignored. Windows of up to
+ * SORT_AREA samples are cheaper to sort directly and skip the histogram.
+ */
+public class MedianFilter2D extends ScalarField2D.ArrayField {
+
+	public static final int SORT_AREA = 49;
+
+	private ScalarField2D src;
+
+	public MedianFilter2D( ScalarField2D src, int radius ){
+		super( src.getWidth(), src.getHeight(), filter( src, radius ) );
+		this.src = src;
+	}
+
+	@Override public double[] getCoordinate(int x, int y) { return src.getCoordinate(x, y); }
+
+	private static float [] filter( ScalarField2D src, final int radius ){
+		final int w = src.getWidth(), h = src.getHeight();
+		final float [] vals = new float[w*h];
+		src.getRegion( 0, 0, w, h, vals, 0 );
+		final float [] ret = new float[w*h];
+
+		if( (2*radius+1)*(2*radius+1) <= SORT_AREA ){
+			ParallelX.forEachChunk( h, ParallelX.getChunkCount( h, 8 ), (c,start,end) -> {
+				float [] tmp = new float[(2*radius+1)*(2*radius+1)];
+				for(int y = start; y < end; y++){
+					int y0 = Math.max( 0, y-radius ), y1 = Math.min( h-1, y+radius );
+					for(int x = 0; x < w; x++){
+						int x0 = Math.max( 0, x-radius ), x1 = Math.min( w-1, x+radius );
+						int n = 0;
+						for(int yy = y0; yy <= y1; yy++){
+							for(int xx = x0; xx <= x1; xx++){
+								float v = vals[yy*w+xx];
+								if( !Float.isNaN(v) && !Float.isInfinite(v) ) tmp[n++] = v;
+							}
+						}
+						ret[y*w+x] = median( tmp, n );
+					}
+				}
+			});
+			return ret;
+		}
+
+		final Levels lv = new Levels( vals );
+
+		ParallelX.forEachChunk( h, ParallelX.getChunkCount( h, 8 ), (c,start,end) -> {
+			Histogram hist = new Histogram( lv.getLevelCount() );
+			for(int y = start; y < end; y++){
+				int y0 = Math.max( 0, y-radius ), y1 = Math.min( h-1, y+radius );
+				for(int x = -radius; x < w; x++){
+					// column x+radius enters, column x-radius-1 leaves
+					if( x+radius < w ){
+						for(int yy = y0; yy <= y1; yy++) hist.add( lv.level[yy*w+x+radius], 1 );
+					}
+					if( x-radius-1 >= 0 ){
+						for(int yy = y0; yy <= y1; yy++) hist.add( lv.level[yy*w+x-radius-1], -1 );
+					}
+					if( x < 0 ) continue;
+					if( hist.size() == 0 ){
+						ret[y*w+x] = Float.NaN;
+						continue;
+					}
+					int b = hist.find( hist.size()/2 );
+					if( lv.isExact(b) ){
+						ret[y*w+x] = lv.getValue(b);
+						continue;
+					}
+					// the bin spans several values, rank the window samples that fall in it
+					int x0 = Math.max( 0, x-radius ), x1 = Math.min( w-1, x+radius );
+					float [] tmp = new float[ hist.count(b) ];
+					int n = 0;
+					for(int yy = y0; yy <= y1; yy++){
+						for(int xx = x0; xx <= x1; xx++){
+							if( lv.level[yy*w+xx] == b ) tmp[n++] = vals[yy*w+xx];
+						}
+					}
+					Arrays.sort( tmp );
+					ret[y*w+x] = tmp[ hist.getRemainder() ];
+				}
+				// empty the histogram for the next row
+				for(int x = Math.max( 0, w-radius-1 ); x < w; x++){
+					for(int yy = y0; yy <= y1; yy++) hist.add( lv.level[yy*w+x], -1 );
+				}
+			}
+		});
+		return ret;
+	}
+
+
+	/**
+	 * The (n/2)-th smallest of the first n entries of tmp, NaN if n is 0.
+	 */
+	static float median( float [] tmp, int n ){
+		if( n == 0 ) return Float.NaN;
+		Arrays.sort( tmp, 0, n );
+		return tmp[n/2];
+	}
+
+
+	/**
+	 * Maps samples to histogram bins by the rank of their value, so bins hold
+	 * about the same number of samples regardless of the value distribution.
+	 * With at most MAX_LEVELS distinct values every bin holds a single value.
+	 */
+	static class Levels {
+		static final int MAX_LEVELS = 1<<20;
+
+		final int [] level;			// bin of each sample, -1 if invalid
+		private float [] uniq;		// distinct valid values, ascending
+		private int [] first;		// first distinct value of each bin
+
+		Levels( final float [] vals ){
+			int n = 0;
+			float [] sorted = new float[vals.length];
+			for( float v : vals ){
+				// adding 0 folds -0.0 into 0.0, which Arrays.binarySearch would tell apart
+				if( !Float.isNaN(v) && !Float.isInfinite(v) ) sorted[n++] = v + 0.0f;
+			}
+			sorted = Arrays.copyOf( sorted, n );
+			Arrays.parallelSort( sorted );
+
+			int m = 0;
+			for(int i = 0; i < n; i++){
+				if( m == 0 || sorted[i] != sorted[m-1] ) sorted[m++] = sorted[i];
+			}
+			uniq = Arrays.copyOf( sorted, m );
+
+			final int bins = Math.max( 1, Math.min( m, MAX_LEVELS ) );
+			final long um = Math.max( 1, m );
+			first = new int[bins+1];
+			for(int b = 0; b <= bins; b++){
+				first[b] = (int)( ( (long)b*um + bins-1 ) / bins );
+			}
+
+			level = new int[vals.length];
+			ParallelX.forEachChunk( vals.length, ParallelX.getChunkCount( vals.length, 1<<14 ), (c,start,end) -> {
+				for(int i = start; i < end; i++){
+					float v = vals[i];
+					if( Float.isNaN(v) || Float.isInfinite(v) ){
+						level[i] = -1;
+						continue;
+					}
+					int u = Arrays.binarySearch( uniq, v + 0.0f );
+					level[i] = (int)( (long)u*bins/um );
+				}
+			});
+		}
+
+		int getLevelCount( ){ return first.length-1; }
+		boolean isExact( int b ){ return first[b+1]-first[b] == 1; }
+		float getValue( int b ){ return uniq[ first[b] ]; }
+	}
+
+
+	/**
+	 * Cumulative histogram over bins (a Fenwick tree) that finds the k-th
+	 * smallest sample in logarithmic time.
+	 */
+	static class Histogram {
+		private int [] tree;
+		private int [] bins;
+		private int total = 0;
+		private int top;
+		private int rem;
+
+		Histogram( int n ){
+			tree = new int[n+1];
+			bins = new int[n];
+			top = Integer.highestOneBit( Math.max( 1, n ) );
+		}
+
+		void add( int b, int d ){
+			if( b < 0 ) return;
+			bins[b] += d;
+			total += d;
+			for(int i = b+1; i < tree.length; i += i & -i) tree[i] += d;
+		}
+
+		int size( ){ return total; }
+		int count( int b ){ return bins[b]; }
+
+		/**
+		 * Bin holding the k-th smallest sample (0-based), leaving its position
+		 * within the bin for getRemainder().
+		 */
+		int find( int k ){
+			int pos = 0;
+			for(int step = top; step > 0; step >>= 1){
+				int next = pos+step;
+				if( next < tree.length && tree[next] <= k ){
+					pos = next;
+					k -= tree[next];
+				}
+			}
+			rem = k;
+			return pos;
+		}
+
+		int getRemainder( ){ return rem; }
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import java.util.Arrays;
+
+import usf.saav.common.ParallelX;
+import usf.saav.common.data.FloatStorage;
+import usf.saav.scalarfield.ScalarField3D;
+
+/**
+ * Median of a volume over a (2*radius+1)^3 window, clipped at the edges. As
+ * in MedianFilter2D the window slides along each row, here adding and
+ * removing a y-z plane of samples per step, and windows of up to
+ * MedianFilter2D.SORT_AREA samples are sorted directly. The volume must fit
+ * in an array.
+ */
+public class MedianFilter3D extends ScalarField3D.StorageField {
+
+	public MedianFilter3D( ScalarField3D src, int radius ){
+		super( src.getWidth(), src.getHeight(), src.getDepth(), filter( src, radius ) );
+	}
+
+	private static FloatStorage filter( ScalarField3D src, final int radius ){
+		final int w = src.getWidth(), h = src.getHeight(), d = src.getDepth();
+		final float [] vals = new float[src.getSize()];
+		src.getRegion( 0, 0, 0, w, h, d, vals, 0 );
+		final FloatStorage ret = FloatStorage.allocate( vals.length );
+		final int k = 2*radius+1;
+
+		if( k*k*k <= MedianFilter2D.SORT_AREA ){
+			ParallelX.forEachChunk( h*d, ParallelX.getChunkCount( h*d, 8 ), (c,start,end) -> {
+				float [] tmp = new float[k*k*k];
+				float [] row = new float[w];
+				for(int line = start; line < end; line++){
+					int y = line % h, z = line / h;
+					int y0 = Math.max( 0, y-radius ), y1 = Math.min( h-1, y+radius );
+					int z0 = Math.max( 0, z-radius ), z1 = Math.min( d-1, z+radius );
+					for(int x = 0; x < w; x++){
+						int x0 = Math.max( 0, x-radius ), x1 = Math.min( w-1, x+radius );
+						int n = 0;
+						for(int zz = z0; zz <= z1; zz++){
+							for(int yy = y0; yy <= y1; yy++){
+								for(int xx = x0; xx <= x1; xx++){
+									float v = vals[(zz*h+yy)*w+xx];
+									if( !Float.isNaN(v) && !Float.isInfinite(v) ) tmp[n++] = v;
+								}
+							}
+						}
+						row[x] = MedianFilter2D.median( tmp, n );
+					}
+					ret.set( (long)line*w, row, 0, w );
+				}
+			});
+			return ret;
+		}
+
+		final MedianFilter2D.Levels lv = new MedianFilter2D.Levels( vals );
+
+		ParallelX.forEachChunk( h*d, ParallelX.getChunkCount( h*d, 8 ), (c,start,end) -> {
+			MedianFilter2D.Histogram hist = new MedianFilter2D.Histogram( lv.getLevelCount() );
+			float [] row = new float[w];
+			for(int line = start; line < end; line++){
+				int y = line % h, z = line / h;
+				int y0 = Math.max( 0, y-radius ), y1 = Math.min( h-1, y+radius );
+				int z0 = Math.max( 0, z-radius ), z1 = Math.min( d-1, z+radius );
+				for(int x = -radius; x < w; x++){
+					// plane x+radius enters, plane x-radius-1 leaves
+					if( x+radius < w ) addPlane( hist, lv, x+radius, y0, y1, z0, z1, w, h, 1 );
+					if( x-radius-1 >= 0 ) addPlane( hist, lv, x-radius-1, y0, y1, z0, z1, w, h, -1 );
+					if( x < 0 ) continue;
+					if( hist.size() == 0 ){
+						row[x] = Float.NaN;
+						continue;
+					}
+					int b = hist.find( hist.size()/2 );
+					if( lv.isExact(b) ){
+						row[x] = lv.getValue(b);
+						continue;
+					}
+					// the bin spans several values, rank the window samples that fall in it
+					int x0 = Math.max( 0, x-radius ), x1 = Math.min( w-1, x+radius );
+					float [] tmp = new float[ hist.count(b) ];
+					int n = 0;
+					for(int zz = z0; zz <= z1; zz++){
+						for(int yy = y0; yy <= y1; yy++){
+							for(int xx = x0; xx <= x1; xx++){
+								int i = (zz*h+yy)*w+xx;
+								if( lv.level[i] == b ) tmp[n++] = vals[i];
+							}
+						}
+					}
+					Arrays.sort( tmp );
+					row[x] = tmp[ hist.getRemainder() ];
+				}
+				// empty the histogram for the next row
+				for(int x = Math.max( 0, w-radius-1 ); x < w; x++){
+					addPlane( hist, lv, x, y0, y1, z0, z1, w, h, -1 );
+				}
+				ret.set( (long)line*w, row, 0, w );
+			}
+		});
+		return ret;
+	}
+
+	private static void addPlane( MedianFilter2D.Histogram hist, MedianFilter2D.Levels lv, int x, int y0, int y1, int z0, int z1, int w, int h, int sign ){
+		for(int z = z0; z <= z1; z++){
+			for(int y = y0; y <= y1; y++){
+				hist.add( lv.level[(z*h+y)*w+x], sign );
+			}
+		}
+	}
+}
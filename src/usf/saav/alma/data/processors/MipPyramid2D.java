@@ -0,0 +1,166 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import usf.saav.common.range.IntRange1D;
+import usf.saav.scalarfield.ScalarField2D;
+
+/**
+ * Mip pyramid of a slice. Level l reduces 2^l x 2^l blocks of the slice to
+ * their mean, minimum and maximum, so zoomed-out views can show features
+ * that point sampling would skip. Level 0 is a copy of the slice. NaN samples
+ * are ignored, and outside of the slice all levels read NaN.
+ */
+public class MipPyramid2D {
+
+	public enum Mode {
+		MEAN, MIN, MAX
+	}
+
+	private ScalarField2D src;
+	private int [] width, height;
+	private float [][] mean, min, max;
+
+	public MipPyramid2D( ScalarField2D src ){
+		this.src = src;
+
+		int levels = 1;
+		for( int w = src.getWidth(), h = src.getHeight(); w > 1 || h > 1; w = (w+1)/2, h = (h+1)/2 ) levels++;
+
+		width  = new int[levels];
+		height = new int[levels];
+		mean   = new float[levels][];
+		min    = new float[levels][];
+		max    = new float[levels][];
+
+		width[0]  = src.getWidth();
+		height[0] = src.getHeight();
+		mean[0]   = new float[width[0]*height[0]];
+		for(int y = 0, i = 0; y < height[0]; y++ ){
+			for(int x = 0; x < width[0]; x++, i++ ){
+				mean[0][i] = src.getValue(x, y);
+			}
+		}
+		min[0] = max[0] = mean[0];
+
+		for(int l = 1; l < levels; l++ ){
+			reduce( l );
+		}
+	}
+
+	private void reduce( int l ){
+		int pw = width[l-1], ph = height[l-1];
+		int w = (pw+1)/2, h = (ph+1)/2;
+		width[l]  = w;
+		height[l] = h;
+		mean[l] = new float[w*h];
+		min[l]  = new float[w*h];
+		max[l]  = new float[w*h];
+
+		for(int y = 0; y < h; y++ ){
+			for(int x = 0; x < w; x++ ){
+				double sum = 0;
+				int cnt = 0;
+				float lo = Float.NaN, hi = Float.NaN;
+				for(int py = 2*y; py < Math.min(2*y+2, ph); py++ ){
+					for(int px = 2*x; px < Math.min(2*x+2, pw); px++ ){
+						int pi = py*pw+px;
+						if( Float.isNaN(mean[l-1][pi]) ) continue;
+						sum += mean[l-1][pi];
+						cnt++;
+						if( !(min[l-1][pi] >= lo) ) lo = min[l-1][pi];
+						if( !(max[l-1][pi] <= hi) ) hi = max[l-1][pi];
+					}
+				}
+				mean[l][y*w+x] = ( cnt == 0 ) ? Float.NaN : (float)(sum/cnt);
+				min[l][y*w+x]  = lo;
+				max[l][y*w+x]  = hi;
+			}
+		}
+	}
+
+	public int getLevelCount( ){ return width.length; }
+
+	/**
+	 * Finest level whose blocks are no larger than step pixels.
+	 */
+	public int getLevelForStep( int step ){
+		int l = 0;
+		while( l+1 < getLevelCount() && (2<<l) <= step ) l++;
+		return l;
+	}
+
+	public ScalarField2D getLevel( int l, Mode mode ){
+		switch( mode ){
+			case MIN:	return new Level( l, min[l] );
+			case MAX:	return new Level( l, max[l] );
+			default:	return new Level( l, mean[l] );
+		}
+	}
+
+	/**
+	 * Region xr x yr of the slice viewed with power-of-two steps, as
+	 * Subsample2D( Subset2D( slice, xr, yr ), stepX, stepY ) but reading from
+	 * the coarsest level that does not exceed either step.
+	 */
+	public ScalarField2D getRegion( IntRange1D xr, IntRange1D yr, int stepX, int stepY, Mode mode ){
+		int l = getLevelForStep( Math.min(stepX, stepY) );
+		int x0 = xr.start()>>l, y0 = yr.start()>>l;
+		if( (xr.length()>>l) == 0 || (yr.length()>>l) == 0 ){
+			return new Subsample2D( new Subset2D( getLevel(0, mode), xr, yr ), stepX, stepY );
+		}
+		ScalarField2D sub = new Subset2D( getLevel(l, mode), new IntRange1D( x0, x0+(xr.length()>>l)-1 ), new IntRange1D( y0, y0+(yr.length()>>l)-1 ) );
+		return new Subsample2D( sub, stepX>>l, stepY>>l );
+	}
+
+	class Level extends ScalarField2D.Default {
+		int l;
+		float [] data;
+
+		Level( int l, float [] data ){
+			super(false);
+			this.l = l;
+			this.data = data;
+		}
+
+		@Override public int getWidth() {  return width[l]; }
+		@Override public int getHeight() { return height[l]; }
+
+		@Override public float getValue(int x, int y) {
+			if( x < 0 || y < 0 || x >= width[l] || y >= height[l] ) return Float.NaN;
+			return data[y*width[l]+x];
+		}
+
+		@Override
+		public void getRegion( int x0, int y0, int w, int h, float [] dst, int offset ){
+			if( x0 >= 0 && y0 >= 0 && x0+w <= width[l] && y0+h <= height[l] ){
+				copyRegion( data, 0, width[l], x0, y0, w, h, dst, offset );
+				return;
+			}
+			super.getRegion( x0, y0, w, h, dst, offset );
+		}
+
+		@Override public double[] getCoordinate(int x, int y) {
+			return src.getCoordinate( x<<l, y<<l );
+		}
+	}
+
+}
@@ -39,6 +39,7 @@ public class Moment0 extends ScalarField2D.Default {
 
 	int w,h;
 	double [] data;
+	volatile boolean computed = false;
 	ScalarField3D src;
 	//double dV;
 
@@ -71,13 +72,24 @@ public class Moment0 extends ScalarField2D.Default {
 	 * @see usf.saav.alma.data.ScalarField2D#getValue(int, int)
 	 */
 	@Override public float getValue(int x, int y) {
-		if( Double.isNaN(data[y*w+x]) ){
-			data[y*w+x] = 0;
-			for( int z = 0; z < src.getDepth(); z++){
-				data[y*w+x] += Math.abs(src.getValue(x, y, z));
+		if( !computed ) compute();
+		return (float) data[y*w+x];
+	}
+
+	/**
+	 * Sums the whole map on first access, reading the source a slice at a time.
+	 */
+	private synchronized void compute( ){
+		if( computed ) return;
+		Arrays.fill( data, 0 );
+		float [] slice = new float[w*h];
+		for( int z = 0; z < src.getDepth(); z++){
+			src.getRegion( 0, 0, z, w, h, 1, slice, 0 );
+			for(int i = 0; i < slice.length; i++){
+				data[i] += Math.abs(slice[i]);
 			}
 		}
-		return (float) data[y*w+x];
+		computed = true;
 	}
 
 }
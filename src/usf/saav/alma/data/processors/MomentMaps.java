@@ -0,0 +1,165 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import usf.saav.alma.data.fits.FitsReader;
+import usf.saav.common.ParallelX;
+import usf.saav.common.range.IntRange1D;
+import usf.saav.scalarfield.ScalarField2D;
+import usf.saav.scalarfield.ScalarField3D;
+
+/**
+ * Moment 0, 1 and 2 maps of a cube computed together in one pass over its
+ * slices. Moment0, Moment1 and Moment2 evaluate per pixel and walk each
+ * spectrum once per moment; here every slice is read once, ranges of slices
+ * are accumulated by separate threads, and the partial sums are merged at the
+ * end. Values follow Moment0/1/2, with z the slice index:
+ * M0 = sum |A|, M1 = sum z|A| / M0, M2 = sqrt( sum (z-M1)^2 |A| / M0 ).
+ *
+ * The masked variants only include finite voxels with |A| at or above the
+ * clip level and, if a mask is given, a nonzero mask value.
+ */
+public class MomentMaps {
+
+	/**
+	 * Upper bound on the memory used by per-thread accumulators.
+	 */
+	public static final long MAX_ACCUMULATOR_BYTES = 1L<<30;
+
+	public interface SliceSource {
+		ScalarField2D getSlice( int z ) throws IOException;
+	}
+
+	private ScalarField2D m0, m1, m2;
+
+	private MomentMaps( int w, int h, double [] s0, double [] s1, double [] s2 ){
+		float [] d0 = new float[w*h];
+		float [] d1 = new float[w*h];
+		float [] d2 = new float[w*h];
+		for(int i = 0; i < d0.length; i++){
+			double mean = s1[i] / s0[i];
+			d0[i] = (float)s0[i];
+			d1[i] = (float)mean;
+			d2[i] = (float)Math.sqrt( Math.max( 0, s2[i]/s0[i] - mean*mean ) );
+			if( Double.isNaN(mean) ) d2[i] = Float.NaN;
+		}
+		m0 = new ScalarField2D.ArrayField( w, h, d0 );
+		m1 = new ScalarField2D.ArrayField( w, h, d1 );
+		m2 = new ScalarField2D.ArrayField( w, h, d2 );
+	}
+
+	public ScalarField2D getMoment0( ){ return m0; }
+	public ScalarField2D getMoment1( ){ return m1; }
+	public ScalarField2D getMoment2( ){ return m2; }
+
+
+	public static MomentMaps compute( ScalarField3D src ){
+		return compute( src, null, Float.NaN );
+	}
+
+	public static MomentMaps compute( ScalarField3D src, float clip ){
+		return compute( src, null, clip );
+	}
+
+	/**
+	 * @param mask voxels where the mask is 0 or NaN are excluded, may be null.
+	 * @param clip voxels with |A| below clip are excluded, NaN for no clipping.
+	 */
+	public static MomentMaps compute( final ScalarField3D src, final ScalarField3D mask, float clip ){
+		try {
+			return compute( (z) -> new Extract2DFrom3D( src, z ), 
+					( mask == null ) ? null : (z) -> new Extract2DFrom3D( mask, z ), 
+					src.getWidth(), src.getHeight(), src.getDepth(), clip );
+		} catch (IOException e) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Streams the slices of a region of a file. Reads are serialized, the
+	 * accumulation runs in parallel.
+	 */
+	public static MomentMaps compute( final FitsReader fits, final IntRange1D xr, final IntRange1D yr, final IntRange1D zr, float clip ) throws IOException {
+		return compute( (z) -> { synchronized(fits){ return fits.getSlice( xr, yr, zr.start()+z, 0 ); } }, 
+				null, xr.length(), yr.length(), zr.length(), clip );
+	}
+
+	public static MomentMaps compute( final SliceSource src, final SliceSource mask, final int w, final int h, final int d, final float clip ) throws IOException {
+		final int size = w*h;
+		final boolean masked = ( mask != null || !Float.isNaN(clip) );
+		final int chunks = (int)Math.max( 1, Math.min( ParallelX.getChunkCount( d, 1 ), MAX_ACCUMULATOR_BYTES / (24L*Math.max(1,size)) ) );
+
+		final double [][] s0 = new double[chunks][];
+		final double [][] s1 = new double[chunks][];
+		final double [][] s2 = new double[chunks][];
+		final IOException [] error = new IOException[1];
+
+		ParallelX.forEachChunk( d, chunks, (c,start,end) -> {
+			double [] a0 = new double[size];
+			double [] a1 = new double[size];
+			double [] a2 = new double[size];
+			float [] vals = new float[size];
+			float [] mvals = ( mask == null ) ? null : new float[size];
+			try {
+				for(int z = start; z < end; z++ ){
+					src.getSlice(z).getRegion( 0, 0, w, h, vals, 0 );
+					if( mvals != null ) mask.getSlice(z).getRegion( 0, 0, w, h, mvals, 0 );
+					for(int i = 0; i < size; i++ ){
+						float v = vals[i];
+						if( masked ){
+							if( Float.isNaN(v) || Float.isInfinite(v) ) continue;
+							if( Math.abs(v) < clip ) continue;
+							if( mvals != null ){
+								float mv = mvals[i];
+								if( mv == 0 || Float.isNaN(mv) ) continue;
+							}
+						}
+						double av = Math.abs(v);
+						a0[i] += av;
+						a1[i] += z*av;
+						a2[i] += (double)z*z*av;
+					}
+				}
+			} catch (IOException e) {
+				synchronized( error ){ error[0] = e; }
+			}
+			s0[c] = a0;
+			s1[c] = a1;
+			s2[c] = a2;
+		});
+		if( error[0] != null ) throw error[0];
+
+		// merge the per-thread partial sums
+		for(int c = 1; c < chunks; c++ ){
+			for(int i = 0; i < size; i++ ){
+				s0[0][i] += s0[c][i];
+				s1[0][i] += s1[c][i];
+				s2[0][i] += s2[c][i];
+			}
+			s0[c] = s1[c] = s2[c] = null;
+		}
+		return new MomentMaps( w, h, s0[0], s1[0], s2[0] );
+	}
+
+}
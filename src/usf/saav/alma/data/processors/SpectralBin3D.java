@@ -0,0 +1,184 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import java.util.Arrays;
+
+import usf.saav.common.ParallelX;
+import usf.saav.common.data.FloatStorage;
+import usf.saav.scalarfield.ScalarField3D;
+
+/**
+ * Spectral rebinning of a volume. Each channel of the view combines bin
+ * consecutive channels of the source (the last group may be shorter), either
+ * as the mean or the sum of its valid samples, optionally weighted, e.g. by
+ * inverse variance. NaN/inf samples and samples without positive weight are
+ * skipped; groups without valid samples are NaN.
+ * 
+ * Region reads stream through the source a slice at a time. materialize()
+ * builds the binned cube for tree construction, and expand() maps a result
+ * computed on it back to the source's channels.
+ */
+public class SpectralBin3D extends ScalarField3D.Default {
+
+	public enum Mode {
+		MEAN, SUM
+	}
+
+	private ScalarField3D src;
+	private ScalarField3D weights;
+	private int bin;
+	private Mode mode;
+
+	public SpectralBin3D( ScalarField3D src, int bin, Mode mode ){
+		this( src, bin, mode, null );
+	}
+
+	public SpectralBin3D( ScalarField3D src, int bin, Mode mode, ScalarField3D weights ){
+		if( weights != null && ( weights.getWidth() != src.getWidth() || weights.getHeight() != src.getHeight() || weights.getDepth() != src.getDepth() ) )
+			throw new IllegalArgumentException( "Weights do not match volume" );
+		this.src = src;
+		this.bin = Math.max( 1, bin );
+		this.mode = mode;
+		this.weights = weights;
+	}
+
+	public int  getBin( ){ return bin; }
+	public Mode getMode( ){ return mode; }
+
+	@Override public int getWidth()  { return src.getWidth(); }
+	@Override public int getHeight() { return src.getHeight(); }
+	@Override public int getDepth()  { return (src.getDepth()+bin-1)/bin; }
+
+	@Override
+	public float getValue(int x, int y, int z) {
+		double sw = 0, swv = 0;
+		int n = 0;
+		for(int c = z*bin; c < Math.min( src.getDepth(), (z+1)*bin ); c++){
+			float v = src.getValue(x, y, c);
+			float w = ( weights == null ) ? 1 : weights.getValue(x, y, c);
+			if( !isValid(v, w) ) continue;
+			sw  += w;
+			swv += (double)w*v;
+			n++;
+		}
+		return combine( sw, swv, n );
+	}
+
+	@Override
+	public void getRegion( int x0, int y0, int z0, int w, int h, int d, float [] dst, int offset ){
+		int [] count = new int[w*h];
+		for(int z = 0; z < d; z++){
+			binSlice( z0+z, x0, y0, w, h, dst, offset + z*w*h, count );
+		}
+	}
+
+	/**
+	 * Builds the binned cube, output slices in parallel.
+	 */
+	public ScalarField3D.StorageField materialize( ){
+		final int w = getWidth(), h = getHeight(), d = getDepth();
+		final ScalarField3D.StorageField ret = new ScalarField3D.StorageField( w, h, d );
+		ParallelX.forEachChunk( d, ParallelX.getChunkCount( d, 1 ), (c,start,end) -> {
+			float [] slice = new float[w*h];
+			int [] count = new int[w*h];
+			for(int z = start; z < end; z++){
+				binSlice( z, 0, 0, w, h, slice, 0, count );
+				ret.getStorage().set( (long)z*w*h, slice, 0, slice.length );
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * Maps a result computed on the binned cube (e.g. a simplification of
+	 * materialize()) back to the source channels: each valid source sample is
+	 * shifted by the change of its group, divided among the group's valid
+	 * samples for SUM. Detail within a group is kept, so a group that was
+	 * flattened comes back offset rather than flat.
+	 */
+	public FloatStorage expand( final FloatStorage binned ){
+		final int w = getWidth(), h = getHeight(), d = getDepth(), sd = src.getDepth();
+		final int size = w*h;
+		final FloatStorage ret = FloatStorage.allocate( (long)size*sd );
+		ParallelX.forEachChunk( d, ParallelX.getChunkCount( d, 1 ), (c,start,end) -> {
+			float [] orig  = new float[size];
+			float [] delta = new float[size];
+			float [] slice = new float[size];
+			int [] count = new int[size];
+			for(int z = start; z < end; z++){
+				binSlice( z, 0, 0, w, h, orig, 0, count );
+				binned.get( (long)z*size, delta, 0, size );
+				for(int i = 0; i < size; i++){
+					delta[i] -= orig[i];
+					if( mode == Mode.SUM && count[i] > 0 ) delta[i] /= count[i];
+				}
+				for(int ch = z*bin; ch < Math.min( sd, (z+1)*bin ); ch++){
+					src.getRegion( 0, 0, ch, w, h, 1, slice, 0 );
+					for(int i = 0; i < size; i++){
+						float v = slice[i];
+						if( Float.isNaN(v) || Float.isInfinite(v) || Float.isNaN(delta[i]) || Float.isInfinite(delta[i]) ) continue;
+						slice[i] = v + delta[i];
+					}
+					ret.set( (long)ch*size, slice, 0, size );
+				}
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * Bins the w x h region at (x0,y0) of output channel z into dst, and the
+	 * number of valid samples per pixel into count.
+	 */
+	private void binSlice( int z, int x0, int y0, int w, int h, float [] dst, int offset, int [] count ){
+		int size = w*h;
+		double [] sw  = new double[size];
+		double [] swv = new double[size];
+		float [] vals = new float[size];
+		float [] wts  = ( weights == null ) ? null : new float[size];
+		Arrays.fill( count, 0, size, 0 );
+		for(int c = z*bin; c < Math.min( src.getDepth(), (z+1)*bin ); c++){
+			src.getRegion( x0, y0, c, w, h, 1, vals, 0 );
+			if( wts != null ) weights.getRegion( x0, y0, c, w, h, 1, wts, 0 );
+			for(int i = 0; i < size; i++){
+				float wt = ( wts == null ) ? 1 : wts[i];
+				if( !isValid( vals[i], wt ) ) continue;
+				sw[i]  += wt;
+				swv[i] += (double)wt*vals[i];
+				count[i]++;
+			}
+		}
+		for(int i = 0; i < size; i++){
+			dst[offset+i] = combine( sw[i], swv[i], count[i] );
+		}
+	}
+
+	private static boolean isValid( float v, float w ){
+		return !Float.isNaN(v) && !Float.isInfinite(v) && w > 0 && !Float.isInfinite(w);
+	}
+
+	private float combine( double sw, double swv, int n ){
+		if( n == 0 ) return Float.NaN;
+		double mean = swv/sw;
+		return (float)( ( mode == Mode.SUM ) ? mean*n : mean );
+	}
+}
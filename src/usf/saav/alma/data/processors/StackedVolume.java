@@ -0,0 +1,88 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.data.processors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import usf.saav.common.ParallelX;
+import usf.saav.scalarfield.ScalarField2D;
+import usf.saav.scalarfield.ScalarField3D;
+
+/**
+ * Volume built by copying 2D layers into one contiguous storage, so reads
+ * index it directly instead of going through a layer per voxel as
+ * LayeredVolume does. Layers are copied in parallel through their region
+ * reads, and are cropped to the smallest layer, as in LayeredVolume.
+ */
+public class StackedVolume extends ScalarField3D.StorageField {
+
+	public StackedVolume( ScalarField2D ... layers ){
+		this( Arrays.asList( layers ) );
+	}
+
+	public StackedVolume( final List<ScalarField2D> layers ){
+		super( getMinWidth( layers ), getMinHeight( layers ), layers.size() );
+		final int w = getWidth(), h = getHeight();
+		final float [] arr = getBackingArray();
+		ParallelX.forEach( layers.size(), (z) -> {
+			if( arr != null ){
+				layers.get(z).getRegion( 0, 0, w, h, arr, z*w*h );
+				return;
+			}
+			float [] buf = new float[w*h];
+			layers.get(z).getRegion( 0, 0, w, h, buf, 0 );
+			getStorage().set( (long)z*w*h, buf, 0, w*h );
+		});
+	}
+
+	private static int getMinWidth( List<ScalarField2D> layers ){
+		int ret = layers.isEmpty() ? 0 : Integer.MAX_VALUE;
+		for( ScalarField2D l : layers ) ret = Math.min( ret, l.getWidth() );
+		return ret;
+	}
+
+	private static int getMinHeight( List<ScalarField2D> layers ){
+		int ret = layers.isEmpty() ? 0 : Integer.MAX_VALUE;
+		for( ScalarField2D l : layers ) ret = Math.min( ret, l.getHeight() );
+		return ret;
+	}
+
+
+	/**
+	 * Collects layers, e.g. while looping over slices, and stacks them once.
+	 */
+	public static class Builder {
+		private List<ScalarField2D> layers = new ArrayList<ScalarField2D>( );
+
+		public Builder addLayers( ScalarField2D ... _layers ){
+			layers.addAll( Arrays.asList( _layers ) );
+			return this;
+		}
+
+		public int getDepth( ){ return layers.size(); }
+
+		public StackedVolume build( ){
+			return new StackedVolume( layers );
+		}
+	}
+}
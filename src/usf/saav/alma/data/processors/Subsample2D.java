@@ -72,4 +72,20 @@ public class Subsample2D extends ScalarField2D.Default {
 	@Override public float getValue(int x, int y) { 
 		return field.getValue(x*sx, y*sy); 
 	}		
+
+	@Override
+	public void getRegion( int x0, int y0, int w, int h, float [] dst, int offset ){
+		if( sx == 1 && sy == 1 ){
+			field.getRegion( x0, y0, w, h, dst, offset );
+			return;
+		}
+		float [] src = field.getBackingArray();
+		int fw = field.getWidth();
+		for(int y = 0; y < h; y++){
+			for(int x = 0; x < w; x++){
+				int px = (x0+x)*sx, py = (y0+y)*sy;
+				dst[offset++] = ( src != null ) ? src[py*fw+px] : field.getValue(px, py);
+			}
+		}
+	}
 }
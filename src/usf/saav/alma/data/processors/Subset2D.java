@@ -93,6 +93,11 @@ public class Subset2D extends ScalarField2D.Default {
 	 * @see usf.saav.alma.data.ScalarField2D#getValue(int, int)
 	 */
 	@Override public float getValue(int x, int y) { return src.getValue(x+x0, y+y0); }
+
+	@Override
+	public void getRegion( int x, int y, int w, int h, float [] dst, int offset ){
+		src.getRegion( x+x0, y+y0, w, h, dst, offset );
+	}
 	
 	/* (non-Javadoc)
 	 * @see usf.saav.alma.data.ScalarField2D.Default#getCoordinate(int, int)
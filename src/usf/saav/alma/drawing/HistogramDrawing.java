@@ -26,7 +26,7 @@ import usf.saav.scalarfield.ScalarField3D;
 import usf.saav.scalarfield.ScalarFieldND;
 import usf.saav.common.MathX;
 import usf.saav.common.MathX.Gaussian;
-import usf.saav.common.histogram.deprecated.Histogram1D;
+import usf.saav.common.histogram.Histogram;
 import usf.saav.common.mvc.ViewComponent;
 import usf.saav.common.mvc.swing.TGraphics;
 import usf.saav.common.range.FloatRange1D;
@@ -38,7 +38,7 @@ import usf.saav.common.range.FloatRange1D;
 public class HistogramDrawing extends ViewComponent.Default implements ViewComponent {
 
 	protected FloatRange1D range;
-	protected Histogram1D	 histogram;
+	protected Histogram		 histogram;
 	private Gaussian	 norm_dist;
 	private int			 binCount;
 	private long		 binMax = 0;
@@ -120,15 +120,42 @@ public class HistogramDrawing extends ViewComponent.Default implements ViewCompo
 		for(int i = 0; i < sf.getSize(); i+=step){
 			range.expand( sf.getValue(i) );
 		}
-		histogram = new Histogram1D( range, binCount );
+		histogram = new Histogram( binCount, (float)range.getMinimum(), (float)range.getMaximum() );
 		for(int i = 0; i < sf.getSize(); i+=step){
 			float v = sf.getValue(i);
 			if( !Float.isNaN(v) )
-				histogram.Add( v );
+				histogram.add( v );
 		}
-		binMax = histogram.GetMaximumBin() + histogram.GetMaximumBin()/20;
-		norm_dist = new Gaussian( histogram.getApproximateMean(), histogram.getApproximateStdev() );
+		updateScale( );
+	}
 
+	/**
+	 * Sets precomputed counts over equal bins of range, e.g. from the slice
+	 * statistics, merging them down to this drawing's bin count.
+	 *
+	 * @param range the range covered by the counts
+	 * @param counts the counts per bin
+	 */
+	public void setHistogram( FloatRange1D range, long [] counts ){
+		this.range = range;
+		histogram = new Histogram( binCount, (float)range.getMinimum(), (float)range.getMaximum() );
+		for(int i = 0; i < counts.length; i++){
+			histogram.addToBin( (int)((long)i*binCount/counts.length), (int)Math.min( Integer.MAX_VALUE, counts[i] ) );
+		}
+		updateScale( );
+	}
+
+	/**
+	 * Removes the histogram, e.g. for a slice without finite values.
+	 */
+	public void clear( ){
+		range = null;
+		histogram = null;
+	}
+
+	private void updateScale( ){
+		binMax = histogram.binMax() + histogram.binMax()/20;
+		norm_dist = new Gaussian( histogram.getApproximateMean(), histogram.getApproximateStdev() );
 	}
 
 	/* (non-Javadoc)
@@ -221,14 +248,14 @@ public class HistogramDrawing extends ViewComponent.Default implements ViewCompo
 		g.strokeWeight(1);
 		g.stroke(50);
 		g.fill(200);
-		float binW = (float)winX.length() / (float)histogram.GetBinCount() - 2;
-		for(int i = 0; i < histogram.GetBinCount(); i++){
+		float binW = (float)winX.length() / (float)histogram.size() - 2;
+		for(int i = 0; i < histogram.size(); i++){
 			float binX = winX.start() + (binW+2)*i + 1;
 			float binH;
 			if( log_scale )
-				binH = Math.max(4, (winY.length()-2) * (float)Math.log(histogram.GetBinValue(i)) / (float)Math.log(binMax) );
+				binH = Math.max(4, (winY.length()-2) * (float)Math.log(histogram.get(i)) / (float)Math.log(binMax) );
 			else
-				binH = Math.max(4, (winY.length()-2) * (float)histogram.GetBinValue(i) / (float)binMax );
+				binH = Math.max(4, (winY.length()-2) * (float)histogram.get(i) / (float)binMax );
 			g.rect( binX, winY.end()-binH, binW, binH );
 		}
 		g.flush();
@@ -0,0 +1,313 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.alma.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import usf.saav.common.BasicObject;
+import usf.saav.common.SystemX;
+import usf.saav.common.data.FloatStorage;
+import usf.saav.scalarfield.ScalarField2D;
+import usf.saav.scalarfield.ScalarField3D;
+
+/**
+ * On-disk cache of simplification results. Entries are keyed by a SHA-256
+ * hash of the input region's values plus the parameters that produced them,
+ * so identical work on the same data is found regardless of file name.
+ * Entries are raw float arrays behind a small header, and the least recently
+ * used files are deleted once the cache exceeds its size bound.
+ */
+public class ResultCache extends BasicObject {
+
+	public static final long DEFAULT_MAX_BYTES = 1L<<30;
+
+	private static final int MAGIC   = 0x41524331;	// "ARC1"
+	private static final int HEADER  = 16;
+	private static final int IO_SIZE = 1<<20;
+
+	private File dir;
+	private long maxBytes;
+	private long totalBytes;	// running size of the entries, so put() only scans the directory when over the bound
+
+	public ResultCache( File dir, long maxBytes ){
+		super(true);
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		if( !dir.exists() && !dir.mkdirs() ){
+			print_warning_message( "Unable to create cache directory " + dir );
+		}
+		this.totalBytes = getSize( listEntries() );
+	}
+
+	/**
+	 * Cache in the system temp directory, bounded to DEFAULT_MAX_BYTES.
+	 */
+	public static ResultCache getDefault( ){
+		return new ResultCache( new File( SystemX.getTempDirectory(), "alma-tda-cache" ), DEFAULT_MAX_BYTES );
+	}
+
+	public File getDirectory( ){ return dir; }
+	public long getMaxBytes( ){ return maxBytes; }
+	public synchronized long getTotalBytes( ){ return totalBytes; }
+
+
+	/**
+	 * Incrementally hashed cache key. Parameters and data are added in a fixed
+	 * order by the caller.
+	 */
+	public static class Key {
+		private MessageDigest md;
+		private ByteBuffer buf = ByteBuffer.allocate( 4096 ).order( ByteOrder.LITTLE_ENDIAN );
+		private String hex = null;
+
+		public Key( String kind ){
+			try {
+				md = MessageDigest.getInstance( "SHA-256" );
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException( e );
+			}
+			add( kind );
+		}
+
+		public Key add( String str ){
+			byte [] b = str.getBytes( java.nio.charset.StandardCharsets.UTF_8 );
+			add( b.length );
+			flush();
+			md.update( b );
+			return this;
+		}
+
+		public Key add( int v ){
+			if( buf.remaining() < 4 ) flush();
+			buf.putInt( v );
+			return this;
+		}
+
+		public Key add( float v ){
+			if( buf.remaining() < 4 ) flush();
+			buf.putInt( Float.floatToIntBits(v) );
+			return this;
+		}
+
+		public Key add( float [] vals, int off, int len ){
+			while( len > 0 ){
+				if( buf.remaining() < 4 ) flush();
+				int n = Math.min( len, buf.remaining()/4 );
+				buf.asFloatBuffer().put( vals, off, n );
+				buf.position( buf.position() + n*4 );
+				off += n;
+				len -= n;
+			}
+			return this;
+		}
+
+		// values are read a row or slice at a time through the bulk getRegion
+		public Key add( ScalarField2D sf ){
+			add( sf.getWidth() ).add( sf.getHeight() );
+			float [] row = new float[sf.getWidth()];
+			for(int y = 0; y < sf.getHeight(); y++){
+				sf.getRegion( 0, y, row.length, 1, row, 0 );
+				add( row, 0, row.length );
+			}
+			return this;
+		}
+
+		public Key add( ScalarField3D sf ){
+			add( sf.getWidth() ).add( sf.getHeight() ).add( sf.getDepth() );
+			float [] slice = new float[sf.getWidth()*sf.getHeight()];
+			for(int z = 0; z < sf.getDepth(); z++){
+				sf.getRegion( 0, 0, z, sf.getWidth(), sf.getHeight(), 1, slice, 0 );
+				add( slice, 0, slice.length );
+			}
+			return this;
+		}
+
+		/**
+		 * Copy of this key, so shared prefixes (e.g. the data) are hashed once.
+		 */
+		public Key derive( ){
+			flush();
+			try {
+				Key ret = new Key( (MessageDigest)md.clone() );
+				return ret;
+			} catch (CloneNotSupportedException e) {
+				throw new RuntimeException( e );
+			}
+		}
+
+		private Key( MessageDigest md ){ this.md = md; }
+
+		private void flush( ){
+			buf.flip();
+			md.update( buf );
+			buf.clear();
+		}
+
+		public String toString( ){
+			if( hex == null ){
+				flush();
+				StringBuilder sb = new StringBuilder();
+				for( byte b : md.digest() ) sb.append( String.format( "%02x", b ) );
+				hex = sb.toString();
+			}
+			return hex;
+		}
+	}
+
+
+	private File getFile( Key key ){
+		return new File( dir, key.toString() + ".bin" );
+	}
+
+	public boolean contains( Key key ){
+		return getFile(key).exists();
+	}
+
+	/**
+	 * @return the cached values, or null if missing or unreadable.
+	 */
+	public FloatStorage get( Key key ){
+		File f = getFile(key);
+		if( !f.exists() ) return null;
+		try ( RandomAccessFile raf = new RandomAccessFile( f, "r" ) ){
+			FileChannel chan = raf.getChannel();
+			ByteBuffer bb = ByteBuffer.allocate( IO_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			bb.limit( HEADER );
+			readFully( chan, bb );
+			bb.flip();
+			if( bb.getInt() != MAGIC ) return null;
+			bb.getInt();
+			long size = bb.getLong();
+			if( chan.size() != HEADER + size*4 ) return null;
+
+			FloatStorage ret = FloatStorage.allocate( size );
+			long i = 0;
+			while( i < size ){
+				bb.clear();
+				bb.limit( (int)Math.min( IO_SIZE, (size-i)*4 ) );
+				readFully( chan, bb );
+				bb.flip();
+				while( bb.remaining() >= 4 ) ret.set( i++, bb.getFloat() );
+			}
+			f.setLastModified( System.currentTimeMillis() );
+			return ret;
+		} catch (IOException e) {
+			print_warning_message( "Unable to read cache entry " + f + ": " + e.getMessage() );
+			return null;
+		}
+	}
+
+	public void put( Key key, FloatStorage data ){
+		File f   = getFile(key);
+		File tmp = new File( dir, key.toString() + ".tmp" );
+		long old = f.length();
+		try ( RandomAccessFile raf = new RandomAccessFile( tmp, "rw" ) ){
+			raf.setLength( 0 );
+			FileChannel chan = raf.getChannel();
+			ByteBuffer bb = ByteBuffer.allocate( IO_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			bb.putInt( MAGIC ).putInt( 0 ).putLong( data.size() );
+			for( long i = 0; i < data.size(); i++ ){
+				if( bb.remaining() < 4 ){
+					bb.flip();
+					while( bb.hasRemaining() ) chan.write( bb );
+					bb.clear();
+				}
+				bb.putFloat( data.get(i) );
+			}
+			bb.flip();
+			while( bb.hasRemaining() ) chan.write( bb );
+		} catch (IOException e) {
+			print_warning_message( "Unable to write cache entry " + f + ": " + e.getMessage() );
+			tmp.delete();
+			return;
+		}
+		if( !tmp.renameTo( f ) ){
+			f.delete();
+			if( !tmp.renameTo( f ) ) tmp.delete();
+		}
+		added( f.length() - old );
+	}
+
+	private synchronized void added( long bytes ){
+		totalBytes += bytes;
+		if( totalBytes > maxBytes ) evict();
+	}
+
+	/**
+	 * Deletes least recently used entries until the cache fits its bound.
+	 * Rescans the directory, which also resyncs the running size.
+	 */
+	public synchronized void evict( ){
+		File [] files = listEntries();
+		totalBytes = getSize( files );
+		if( totalBytes <= maxBytes ) return;
+		Arrays.sort( files, Comparator.comparingLong( File::lastModified ) );
+		for( File f : files ){
+			if( totalBytes <= maxBytes ) break;
+			long len = f.length();
+			if( f.delete() ) totalBytes -= len;
+		}
+	}
+
+	public synchronized void clear( ){
+		for( File f : listEntries() ) f.delete();
+		totalBytes = getSize( listEntries() );
+	}
+
+	private File [] listEntries( ){
+		File [] files = dir.listFiles( (d,name) -> name.endsWith(".bin") );
+		return ( files == null ) ? new File[0] : files;
+	}
+
+	private static long getSize( File [] files ){
+		long total = 0;
+		for( File f : files ) total += f.length();
+		return total;
+	}
+
+	/**
+	 * Views cached values as a field with the dimensions and coordinates of src.
+	 */
+	public static ScalarField2D asField( final ScalarField2D src, final FloatStorage data ){
+		return new ScalarField2D.Default() {
+			@Override public int getWidth( ){ return src.getWidth(); }
+			@Override public int getHeight( ){ return src.getHeight(); }
+			@Override public float getValue( int x, int y ){ return data.get( (long)y*src.getWidth() + x ); }
+			@Override public double [] getCoordinate( int x, int y ){ return src.getCoordinate(x, y); }
+		};
+	}
+
+	private static void readFully( FileChannel chan, ByteBuffer bb ) throws IOException {
+		while( bb.hasRemaining() ){
+			if( chan.read( bb ) < 0 ) throw new IOException( "Unexpected end of file" );
+		}
+	}
+
+}
@@ -37,6 +37,11 @@ public abstract class BaseCache<PageType extends BasePage> {
 	public static int PAGE_16K = 16384;
 	public static int PAGE_32K = 32768;
 
+	/**
+	 * Pages map their region of the file instead of reading it into a direct buffer.
+	 */
+	public static boolean MAPPED_PAGES = false;
+
 	protected boolean					 verbose;
 	protected boolean					 read_only;
 	protected FileChannel   			 file_chan;
@@ -59,11 +64,25 @@ public abstract class BaseCache<PageType extends BasePage> {
 	}
 	
 
+	/**
+	 * Mode pages should map the file with, or null when pages are not mapped.
+	 */
+	protected FileChannel.MapMode getMapMode( ){
+		if( !MAPPED_PAGES ) return null;
+		return read_only ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+	}
+
 	public abstract void writeBackAll() throws IOException ;
 	
+	/**
+	 * Called by close() before the final write-back, e.g. to stop background work.
+	 */
+	protected void shutdown( ){ }
+	
 	public final void close( boolean delete ) throws IOException {
 		if( file_chan != null ){
 			System.out.printf("closing cache!\n");
+			shutdown();
 			writeBackAll();
 			file_chan.close();
 			file_chan = null;
@@ -25,16 +25,28 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A page of the cache file. The page's bytes live in a direct buffer that is
+ * read into with a single positional read, or, with a map mode, in a mapping
+ * of the page's region of the file. Pages past the end of the file, or
+ * running over it, always use a direct buffer so reads never grow the file.
+ */
 public abstract class BasePage {
 
-	private static long currentAccessTime = 0;
+	private static final AtomicLong currentAccessTime = new AtomicLong();
 	
 		private FileChannel   file_chan;
 		private long 		  access_count;
 		private long 		  access_time;
-		private boolean 	  dirty;
-		private ByteBuffer 	  bb;
+		private AtomicBoolean dirty = new AtomicBoolean();
+		private AtomicInteger pins = new AtomicInteger();
+		private ByteBuffer 	  bb = null;
+		private FileChannel.MapMode map_mode;
+		private boolean		  mapped = false;	// direct buffers are MappedByteBuffers too, so tracked here
 		private Semaphore	  load_sem = new Semaphore(1);
 		private Semaphore	  save_sem = new Semaphore(1);
 
@@ -42,18 +54,20 @@ public abstract class BasePage {
 		protected long 		  page;
 		
 		protected BasePage( FileChannel file_chan, int page_size ) throws IOException {
+			this( file_chan, page_size, null );
+		}
+		
+		/**
+		 * @param map_mode mode to map pages with, or null to read them into a direct buffer.
+		 */
+		protected BasePage( FileChannel file_chan, int page_size, FileChannel.MapMode map_mode ) throws IOException {
 			this.file_chan	  = file_chan;
+			this.map_mode	  = map_mode;
 			this.page_size	  = page_size;
 			//this.access_time  = System.currentTimeMillis();
-			this.access_time  = currentAccessTime;
+			this.access_time  = currentAccessTime.get();
 			this.access_count = 0;
 			this.page 	 	  = -1;
-			this.dirty 		  = false;
-			
-			this.bb = ByteBuffer.allocate(page_size);
-			this.bb.order(ByteOrder.LITTLE_ENDIAN);
-			this.bb.rewind();
-			
 		}
 		
 		
@@ -70,19 +84,31 @@ public abstract class BasePage {
 			writeBack( );
 			
 			this.page   = pg;
-			this.dirty  = false;
+			this.dirty.set( false );
 			
-			if( (page*page_size) >= file_chan.size() ){
-				Deserialize( null );
+			long pos  = page*page_size;
+			long size = file_chan.size();
+			if( map_mode != null && pos + page_size <= size ){
+				bb = file_chan.map( map_mode, pos, page_size );
+				bb.order( ByteOrder.LITTLE_ENDIAN );
+				mapped = true;
 			}
 			else {
-				file_chan.position( page*page_size );
-				file_chan.read(bb);
-				bb.rewind();
-				
-				Deserialize( bb );
+				if( bb == null || mapped ){
+					bb = ByteBuffer.allocateDirect( page_size );
+					bb.order( ByteOrder.LITTLE_ENDIAN );
+					mapped = false;
+				}
+				bb.clear();
+				// positional reads, the channel is shared by every page
+				if( pos < size ){
+					while( bb.hasRemaining() && file_chan.read( bb, pos + bb.position() ) > 0 );
+				}
+				while( bb.hasRemaining() ) bb.put( (byte)0 );
 				bb.rewind();
 			}
+			Deserialize( ( pos < size ) ? bb : null );
+			bb.rewind();
 
 			load_sem.release();
 			
@@ -99,15 +125,18 @@ public abstract class BasePage {
 				e.printStackTrace();
 				return false;
 			}
-			if( dirty ){
+			// cleared first, and atomically, so writes made while serializing keep the page dirty
+			if( dirty.getAndSet( false ) ){
 				Serialize( bb );
 				bb.rewind();
 
-				file_chan.position( page*page_size );
-				file_chan.write( bb );
-				bb.rewind();
+				// a mapped page is already in the file, otherwise write from a duplicate so readers keep their positions
+				if( !mapped ){
+					ByteBuffer out = bb.duplicate();
+					out.rewind();
+					while( out.hasRemaining() ) file_chan.write( out, page*page_size + out.position() );
+				}
 
-				dirty = false;
 				save_sem.release();
 				return true; 
 			}
@@ -118,15 +147,35 @@ public abstract class BasePage {
 		public long getPageID( ){ return page; }
 		public long getAccessTime( ){ return access_time; }
 		public long getAccessCount( ){ return access_count; }
+		public boolean isDirty( ){ return dirty.get(); }
+
+		/**
+		 * Pinned pages are in use and are not evicted.
+		 */
+		public void pin( ){ pins.incrementAndGet(); }
+		public void unpin( ){ pins.decrementAndGet(); }
+		public boolean isPinned( ){ return pins.get() > 0; }
+		
+		/**
+		 * The page's bytes, which subclasses may use in place. Replaced on
+		 * every load, so views must be taken again in Deserialize.
+		 */
+		protected ByteBuffer getBuffer( ){ return bb; }
 		
+		/**
+		 * @param bb the loaded bytes, or null if the page is past the end of the file.
+		 */
 		abstract protected void Deserialize( ByteBuffer bb );
 		abstract protected void Serialize( ByteBuffer bb );
 		
+		/**
+		 * @param write marks the page dirty, so call it after storing the value.
+		 */
 		protected void AccessEvent( boolean write ){
 			//access_time = System.currentTimeMillis();
-			access_time = currentAccessTime++;
+			access_time = currentAccessTime.getAndIncrement();
 			access_count++;
-			if( write ) dirty = true;
+			if( write ) dirty.set( true );
 		}
 		
 		
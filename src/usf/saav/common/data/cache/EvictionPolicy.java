@@ -22,61 +22,319 @@ package usf.saav.common.data.cache;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
+/**
+ * Chooses which pages a cache (or one stripe of it) drops. The owner reports
+ * hits with Access() and misses with Admit(), which evicts to make room when
+ * the owner is full. Pages the owner reports as not evictable (pinned) are
+ * skipped, and if every page is pinned the owner is left over capacity.
+ * Every operation is O(1) apart from skipping pinned pages.
+ */
 public interface EvictionPolicy {
-	public void Evict(int page_count) throws IOException;
+
+	public enum Type {
+		LRU, CLOCK, TWO_Q, ARC
+	}
+
+	/**
+	 * A cached page was accessed.
+	 */
+	public void Access( long page );
+
+	/**
+	 * A page is about to be loaded. Evicts first if the owner is full.
+	 */
+	public void Admit( long page ) throws IOException;
+
+	public void Evict( int page_count ) throws IOException;
+
+
+	/**
+	 * The pages a policy manages.
+	 */
+	public interface Owner {
+		public int  getCapacity( );
+		public int  size( );
+		public boolean isEvictable( long page );
+		/**
+		 * Writes back and drops pages the policy has already forgotten.
+		 */
+		public void evict( long ... pages ) throws IOException;
+	}
+
+
+	public static EvictionPolicy create( Type type, Owner owner, boolean verbose ){
+		switch( type ){
+			case CLOCK: return new CLOCK( owner, verbose );
+			case TWO_Q: return new TwoQ( owner, verbose );
+			case ARC:   return new ARC( owner, verbose );
+			default:    return new LRU( owner, verbose );
+		}
+	}
+
 
 	public abstract class BasePolicy implements EvictionPolicy {
 
-		FullyAssociativeCache<?> cache;
+		Owner     owner;
 		boolean   verbose = false;
 
-		public BasePolicy(FullyAssociativeCache<?> cache, boolean verbose) {
-			this.cache   = cache;
+		public BasePolicy(Owner owner, boolean verbose) {
+			this.owner   = owner;
 			this.verbose = verbose;
 		}
 
+		protected boolean isFull( ){
+			return owner.size() >= owner.getCapacity();
+		}
+
+		/**
+		 * Pages to evict before admitting one, including any left over from
+		 * times when every page was pinned.
+		 */
+		protected int getExcess( ){
+			return owner.size() - owner.getCapacity() + 1;
+		}
+
+		protected static long removeFirst( LinkedHashSet<Long> list ){
+			Iterator<Long> it = list.iterator();
+			long ret = it.next();
+			it.remove();
+			return ret;
+		}
+
+		/**
+		 * Removes the oldest page that is not pinned.
+		 * @return the page, or -1 if there is none.
+		 */
+		protected long removeFirstEvictable( LinkedHashSet<Long> list ){
+			Iterator<Long> it = list.iterator();
+			while( it.hasNext() ){
+				long page = it.next();
+				if( owner.isEvictable( page ) ){
+					it.remove();
+					return page;
+				}
+			}
+			return -1;
+		}
+
 	}
 
 	
+	/**
+	 * Least recently used, through an access-ordered map.
+	 */
 	public class LRU extends BasePolicy {
 
-		public LRU(FullyAssociativeCache<?> cache, boolean verbose) {
-			super(cache, verbose);
+		private LinkedHashMap<Long,Boolean> order = new LinkedHashMap<Long,Boolean>( 16, 0.75f, true );
+
+		public LRU(Owner owner, boolean verbose) {
+			super(owner, verbose);
+		}
+
+		@Override
+		public void Access( long page ){
+			order.get( page );
+		}
+
+		@Override
+		public void Admit( long page ) throws IOException {
+			if( isFull() ) Evict( getExcess() );
+			order.put( page, Boolean.TRUE );
 		}
 
 		@Override
 		public void Evict(int page_count) throws IOException {
-			if (cache.page_table.size() <= cache.page_count) {
-				return;
+			long [] victims = new long[ Math.min( page_count, order.size() ) ];
+			int cnt = 0;
+			Iterator<Long> it = order.keySet().iterator();
+			while( cnt < victims.length && it.hasNext() ){
+				long page = it.next();
+				if( !owner.isEvictable( page ) ) continue;
+				victims[cnt++] = page;
+				it.remove();
+			}
+			owner.evict( Arrays.copyOf( victims, cnt ) );
+		}
+
+	}
+
+
+	/**
+	 * Second chance over pages in load order. An accessed page has its
+	 * reference bit set, and is moved to the back with the bit cleared
+	 * when the hand reaches it.
+	 */
+	public class CLOCK extends BasePolicy {
+
+		private LinkedHashMap<Long,Boolean> ring = new LinkedHashMap<Long,Boolean>( );
+
+		public CLOCK(Owner owner, boolean verbose) {
+			super(owner, verbose);
+		}
+
+		@Override
+		public void Access( long page ){
+			ring.replace( page, Boolean.TRUE );
+		}
+
+		@Override
+		public void Admit( long page ) throws IOException {
+			if( isFull() ) Evict( getExcess() );
+			ring.put( page, Boolean.FALSE );
+		}
+
+		@Override
+		public void Evict(int page_count) throws IOException {
+			long [] victims = new long[ Math.min( page_count, ring.size() ) ];
+			int cnt = 0;
+			// two sweeps clear every reference bit, so only pinned pages can stop the hand
+			for( int steps = 2*ring.size(); cnt < victims.length && steps >= 0; steps-- ){
+				Iterator<Map.Entry<Long,Boolean>> it = ring.entrySet().iterator();
+				Map.Entry<Long,Boolean> hand = it.next();
+				long page = hand.getKey();
+				boolean referenced = hand.getValue();
+				it.remove();
+				if( !owner.isEvictable( page ) ) ring.put( page, referenced );
+				else if( referenced ) ring.put( page, Boolean.FALSE );
+				else victims[cnt++] = page;
+			}
+			owner.evict( Arrays.copyOf( victims, cnt ) );
+		}
+
+	}
+
+
+	/**
+	 * Full 2Q. New pages enter a FIFO (A1in). Only pages that are requested
+	 * again after leaving it, while still remembered in the ghost FIFO (A1out),
+	 * are promoted to the LRU main queue (Am). A single sweep therefore only
+	 * cycles through A1in and leaves the hot pages in Am.
+	 */
+	public class TwoQ extends BasePolicy {
+
+		private LinkedHashSet<Long> a1in  = new LinkedHashSet<Long>( );
+		private LinkedHashSet<Long> a1out = new LinkedHashSet<Long>( );
+		private LinkedHashSet<Long> am    = new LinkedHashSet<Long>( );
+		private int kin, kout;
+
+		public TwoQ(Owner owner, boolean verbose) {
+			super(owner, verbose);
+			kin  = Math.max( 1, owner.getCapacity()/4 );
+			kout = Math.max( 1, owner.getCapacity()/2 );
+		}
+
+		@Override
+		public void Access( long page ){
+			if( am.remove( page ) ) am.add( page );
+		}
+
+		@Override
+		public void Admit( long page ) throws IOException {
+			if( isFull() ) Evict( getExcess() );
+			if( a1out.remove( page ) ) am.add( page );
+			else a1in.add( page );
+		}
+
+		@Override
+		public void Evict(int page_count) throws IOException {
+			for( int i = 0; i < page_count; i++ ){
+				boolean fromIn = a1in.size() > kin || am.isEmpty();
+				long page = removeFirstEvictable( fromIn ? a1in : am );
+				if( page == -1 ){
+					fromIn = !fromIn;
+					page = removeFirstEvictable( fromIn ? a1in : am );
+				}
+				if( page == -1 ) return;
+				if( fromIn ){
+					a1out.add( page );
+					if( a1out.size() > kout ) removeFirst( a1out );
+				}
+				owner.evict( page );
 			}
+		}
+
+	}
+
+
+	/**
+	 * Adaptive replacement cache (Megiddo and Modha). T1 holds pages seen once
+	 * recently, T2 pages seen at least twice. Ghost lists B1 and B2 remember
+	 * pages evicted from each, and hits on them shift the target size of T1.
+	 */
+	public class ARC extends BasePolicy {
+
+		private LinkedHashSet<Long> t1 = new LinkedHashSet<Long>( );
+		private LinkedHashSet<Long> t2 = new LinkedHashSet<Long>( );
+		private LinkedHashSet<Long> b1 = new LinkedHashSet<Long>( );
+		private LinkedHashSet<Long> b2 = new LinkedHashSet<Long>( );
+		private int p = 0;
+
+		public ARC(Owner owner, boolean verbose) {
+			super(owner, verbose);
+		}
 
-			long[] lru_page = new long[page_count];
-			long[] lru_time = new long[page_count];
-			Arrays.fill(lru_page, -1);
-
-			Set<Entry<Long,BasePage>> x = cache.page_table.entrySet();
-			for (Entry<Long, ? extends BasePage> page : x ) {
-				long cur_page = page.getKey();
-				long cur_time = page.getValue().getAccessTime();
-				for (int i = 0; i < lru_page.length; i++) {
-					if (lru_page[i] == -1 || cur_time < lru_time[i]) {
-						long ltmp = cur_page;
-						long ftmp = cur_time;
-						cur_page = lru_page[i];
-						cur_time = lru_time[i];
-						lru_page[i] = ltmp;
-						lru_time[i] = ftmp;
-					}
+		@Override
+		public void Access( long page ){
+			if( t1.remove( page ) || t2.remove( page ) ) t2.add( page );
+		}
+
+		@Override
+		public void Admit( long page ) throws IOException {
+			int c = owner.getCapacity();
+			if( owner.size() > c ) Evict( owner.size() - c );
+			if( b1.remove( page ) ){
+				p = Math.min( c, p + Math.max( 1, b2.size()/Math.max(1,b1.size()) ) );
+				if( isFull() ) replace( false );
+				t2.add( page );
+				return;
+			}
+			if( b2.remove( page ) ){
+				p = Math.max( 0, p - Math.max( 1, b1.size()/Math.max(1,b2.size()) ) );
+				if( isFull() ) replace( true );
+				t2.add( page );
+				return;
+			}
+			if( t1.size() + b1.size() >= c ){
+				if( t1.size() < c ){
+					removeFirst( b1 );
+					if( isFull() ) replace( false );
+				}
+				else {
+					long victim = removeFirstEvictable( t1 );
+					if( victim != -1 ) owner.evict( victim );
 				}
 			}
-			cache.evict(lru_page);
+			else if( t1.size() + t2.size() + b1.size() + b2.size() >= c ){
+				if( t1.size() + t2.size() + b1.size() + b2.size() >= 2*c && !b2.isEmpty() ) removeFirst( b2 );
+				if( isFull() ) replace( false );
+			}
+			t1.add( page );
+		}
+
+		@Override
+		public void Evict(int page_count) throws IOException {
+			for( int i = 0; i < page_count; i++ ){
+				replace( false );
+			}
+		}
 
+		private void replace( boolean inB2 ) throws IOException {
+			boolean fromT1 = !t1.isEmpty() && ( t1.size() > p || ( inB2 && t1.size() == p ) || t2.isEmpty() );
+			long page = removeFirstEvictable( fromT1 ? t1 : t2 );
+			if( page == -1 ){
+				fromT1 = !fromT1;
+				page = removeFirstEvictable( fromT1 ? t1 : t2 );
+			}
+			if( page == -1 ) return;
+			( fromT1 ? b1 : b2 ).add( page );
+			owner.evict( page );
 		}
 
 	}
-	
 
 }
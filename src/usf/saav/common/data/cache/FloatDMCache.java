@@ -22,28 +22,37 @@ package usf.saav.common.data.cache;
 
 import java.io.IOException;
 
-public class FloatDMCache extends DirectMappedCache<FloatPage> {
+public class FloatDMCache extends SetAssociativeCache<FloatPage> {
 
 	public FloatDMCache( String data_file, boolean read_only ) throws IOException {
-		super( data_file, FullyAssociativeCache.PAGE_8K, 2048, read_only, false );
+		this( data_file, FullyAssociativeCache.PAGE_8K, 2048, read_only, false );
 	}
 	
 	public FloatDMCache( String data_file, boolean read_only, boolean verbose ) throws IOException {
-		super( data_file, FullyAssociativeCache.PAGE_8K, 2048, read_only, verbose );
+		this( data_file, FullyAssociativeCache.PAGE_8K, 2048, read_only, verbose );
 	}
 
 	public FloatDMCache( String data_file, int pg_size, int pg_count, boolean read_only ) throws IOException {
-		super( data_file, pg_size, pg_count, read_only, false );
+		this( data_file, pg_size, pg_count, read_only, false );
 	}	
 	
 	public FloatDMCache( String data_file, int pg_size, int pg_count, boolean read_only, boolean verbose ) throws IOException {
-		super( data_file, pg_size, pg_count, read_only, verbose );
+		this( data_file, pg_size, pg_count, SetAssociativeCache.DEFAULT_WAYS, read_only, verbose );
+	}
+
+	public FloatDMCache( String data_file, int pg_size, int pg_count, int ways, boolean read_only, boolean verbose ) throws IOException {
+		super( data_file, pg_size, pg_count, ways, read_only, verbose );
 	}
 	
 	public float get( long element ) throws IOException {
 		long pg = element*4/page_size;
 		long el = element%(page_size/4);
-		return getPage( pg ).getValue( (int)el );
+		FloatPage page = pinPage( pg );
+		try {
+			return page.getValue( (int)el );
+		} finally {
+			unpinPage( page );
+		}
 	}
 
 	public void set( long element, float val ) throws IOException {
@@ -51,20 +60,32 @@ public class FloatDMCache extends DirectMappedCache<FloatPage> {
 
 		long pg = element*4/page_size;
 		long el = element%(page_size/4);
-		getPage( pg ).setValue( (int)el, val );
+		FloatPage page = pinPage( pg );
+		try {
+			page.setValue( (int)el, val );
+		} finally {
+			unpinPage( page );
+		}
 	}
 	
 	public void setBlock( long startElement, float [] val ) throws IOException {
 		if( read_only ) return;
 
-		for( int i = 0; i < val.length; i++ ){
-			
-			long  element = startElement+i;
-			float v = val[i];
-			
-			long pg = element*4/page_size;
-			long el = element%(page_size/4);
-			getPage( pg ).setValue( (int)el, v );
+		int per_page = page_size/4;
+		for( int i = 0; i < val.length; ){
+			long element = startElement+i;
+			long pg = element/per_page;
+			int  el = (int)(element%per_page);
+			int  n  = Math.min( val.length-i, per_page-el );
+			FloatPage page = pinPage( pg );
+			try {
+				for( int j = 0; j < n; j++ ){
+					page.setValue( el+j, val[i+j] );
+				}
+			} finally {
+				unpinPage( page );
+			}
+			i += n;
 		}
 	} 
 	
@@ -73,17 +94,22 @@ public class FloatDMCache extends DirectMappedCache<FloatPage> {
 		
 		for( int i = 0; i < val.length; i++ ){
 			
-			long element = startElement + strideElement*i;
+			long element = startElement + (long)strideElement*i;
 			long pg = element*4/page_size;
 			long el = element%(page_size/4);
 			
-			getPage( pg ).setValue( (int)el, val[i] );
+			FloatPage page = pinPage( pg );
+			try {
+				page.setValue( (int)el, val[i] );
+			} finally {
+				unpinPage( page );
+			}
 		}
 	}
 
 	@Override
 	protected BasePage createPage() throws IOException {
-		return new FloatPage(file_chan, page_size );
+		return new FloatPage(file_chan, page_size, getMapMode() );
 	}
 	
 }
@@ -20,7 +20,9 @@
  */
 package usf.saav.common.data.cache;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FloatFACache extends FullyAssociativeCache<FloatPage> {
 
@@ -40,10 +42,17 @@ public class FloatFACache extends FullyAssociativeCache<FloatPage> {
 		super( data_file, pg_size, pg_count, read_only, verbose );
 	}
 	
+	// pages are pinned while in use, so other threads cannot evict them
+
 	public float get( long element ) throws IOException {
 		long pg = element*4/page_size;
 		long el = element%(page_size/4);
-		return getPage( pg ).getValue( (int)el );
+		FloatPage page = pinPage( pg );
+		try {
+			return page.getValue( (int)el );
+		} finally {
+			unpinPage( page );
+		}
 	}
 
 	public void set( long element, float val ) throws IOException {
@@ -51,20 +60,32 @@ public class FloatFACache extends FullyAssociativeCache<FloatPage> {
 
 		long pg = element*4/page_size;
 		long el = element%(page_size/4);
-		getPage( pg ).setValue( (int)el, val );
+		FloatPage page = pinPage( pg );
+		try {
+			page.setValue( (int)el, val );
+		} finally {
+			unpinPage( page );
+		}
 	}
 	
 	public void setBlock( long startElement, float [] val ) throws IOException {
 		if( read_only ) return;
 
-		for( int i = 0; i < val.length; i++ ){
-			
-			long  element = startElement+i;
-			float v = val[i];
-			
-			long pg = element*4/page_size;
-			long el = element%(page_size/4);
-			getPage( pg ).setValue( (int)el, v );
+		int per_page = page_size/4;
+		for( int i = 0; i < val.length; ){
+			long element = startElement+i;
+			long pg = element/per_page;
+			int  el = (int)(element%per_page);
+			int  n  = Math.min( val.length-i, per_page-el );
+			FloatPage page = pinPage( pg );
+			try {
+				for( int j = 0; j < n; j++ ){
+					page.setValue( el+j, val[i+j] );
+				}
+			} finally {
+				unpinPage( page );
+			}
+			i += n;
 		}
 	} 
 	
@@ -72,18 +93,80 @@ public class FloatFACache extends FullyAssociativeCache<FloatPage> {
 		if( read_only ) return;
 		
 		for( int i = 0; i < val.length; i++ ){
-			
-			long element = startElement + strideElement*i;
-			long pg = element*4/page_size;
-			long el = element%(page_size/4);
-			
-			getPage( pg ).setValue( (int)el, val[i] );
+			set( startElement + (long)strideElement*i, val[i] );
 		}
 	}
 
 	@Override
 	protected BasePage createPage() throws IOException {
-		return new FloatPage(file_chan, page_size );
+		return new FloatPage(file_chan, page_size, getMapMode() );
+	}
+	
+
+	/**
+	 * Stress check of writes racing the background write-back. Several
+	 * threads write interleaved elements of a file much larger than the
+	 * cache, with write-back running continuously, then the file is read
+	 * back and every element checked against its last write. Pages are
+	 * tiny so that many last writes race the write-back.
+	 *
+	 * Usage: FloatFACache [threads] [passes]
+	 */
+	public static void main( String [] args ) throws Exception {
+		final int threads  = ( args.length > 0 ) ? Integer.parseInt( args[0] ) : 4;
+		final int passes   = ( args.length > 1 ) ? Integer.parseInt( args[1] ) : 8;
+		final int elements = 256*1024;
+
+		File file = File.createTempFile( "cache-stress", ".dat" );
+		file.deleteOnExit();
+
+		long interval = WRITEBACK_INTERVAL;
+		WRITEBACK_INTERVAL = 1;
+		final FloatFACache cache = new FloatFACache( file.getPath(), 16, 1024, false );
+		WRITEBACK_INTERVAL = interval;
+
+		Thread [] writers = new Thread[threads];
+		final IOException [] error = new IOException[1];
+		for( int t = 0; t < threads; t++ ){
+			final int start = t;
+			writers[t] = new Thread( () -> {
+				try {
+					for( int p = 0; p < passes; p++ ){
+						for( long i = start; i < elements; i += threads ){
+							cache.set( i, p*elements + i );
+						}
+					}
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			} );
+			writers[t].start();
+		}
+		// writes back continuously alongside the daemon, widening the race
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread flusher = new Thread( () -> {
+			try {
+				while( !done.get() ) cache.writeBackAll();
+			} catch (IOException e) {
+				error[0] = e;
+			}
+		} );
+		flusher.start();
+		for( Thread w : writers ) w.join();
+		done.set( true );
+		flusher.join();
+		cache.close( false );
+		if( error[0] != null ) throw error[0];
+
+		FloatFACache check = new FloatFACache( file.getPath(), true );
+		long lost = 0;
+		for( long i = 0; i < elements; i++ ){
+			if( check.get( i ) != (float)( (passes-1)*elements + i ) ) lost++;
+		}
+		check.close( false );
+
+		System.out.printf( "%d threads, %d passes: %d of %d values lost\n", threads, passes, lost, elements );
+		if( lost > 0 ) System.exit( 1 );
 	}
 	
 }
\ No newline at end of file
@@ -22,51 +22,53 @@ package usf.saav.common.data.cache;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 import java.nio.channels.FileChannel;
-import java.util.Arrays;
 
+/**
+ * Page of floats read and written in place through a view of the page's
+ * buffer, so loading and write-back copy nothing.
+ */
 public class FloatPage extends BasePage {
 
 	public FloatPage( FileChannel file_chan, int page_size  ) throws IOException {
 		super( file_chan, page_size  );
 	}
 	
+	public FloatPage( FileChannel file_chan, int page_size, FileChannel.MapMode map_mode ) throws IOException {
+		super( file_chan, page_size, map_mode );
+	}
+	
 	public float getValue(int item) {
 		AccessEvent( false );
-		if( item >= 0 && item < data.length )
-			return data[item];
+		if( item >= 0 && item < data.capacity() )
+			return data.get(item);
 		return Float.NaN; 
 	}
 	
+	// stored before the page is marked dirty, so a write-back clearing the mark has the value
 	public void setValue( int item, float val ){
+		if( item >= 0 && item < data.capacity() )
+			data.put(item, val);
 		AccessEvent( true );
-		if( item >= 0 && item < data.length )
-			data[item] = val;
 	}
 
 	public int size( ){
-		return data.length;
+		return data.capacity();
 	}
 	
 	protected void Deserialize( ByteBuffer bb ){
-		if( data == null ){ 
-			data = new float[page_size/4];
-			Arrays.fill(data, Float.NaN);
-		}
-		
-		if( bb != null ){
-			for(int i = 0; i < data.length; i++){
-				data[i] = bb.getFloat();
+		data = getBuffer().asFloatBuffer();
+		if( bb == null ){
+			for(int i = 0; i < data.capacity(); i++){
+				data.put( i, Float.NaN );
 			}
 		}
 	}
 	
-	protected void Serialize( ByteBuffer bb ){
-		for(int i = 0; i < data.length; i++){
-			bb.putFloat( data[i] );
-		}
-	}
+	// values are already in the page buffer
+	protected void Serialize( ByteBuffer bb ){ }
 	
-	float [] data;
+	FloatBuffer data;
 	
-}
\ No newline at end of file
+}
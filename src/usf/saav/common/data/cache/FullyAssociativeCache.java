@@ -21,78 +21,241 @@
 package usf.saav.common.data.cache;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map.Entry;
 
+/**
+ * Page cache usable from several threads. Pages are split over stripes by
+ * page id, each with its own lock, page table and eviction policy, so
+ * threads working on different pages rarely contend. Callers pin a page
+ * while using it, and pinned pages are not evicted. Unless read only, a
+ * background thread periodically writes dirty pages back in file order.
+ */
 public abstract class FullyAssociativeCache<PageType extends BasePage> extends BaseCache<PageType> {
 
-	
-	protected HashMap<Long, BasePage>    page_table = new HashMap<Long,BasePage>();
-	protected EvictionPolicy			 evict;
+	public static int  STRIPES = 16;
+	public static int  MIN_STRIPE_PAGES = 64;	// smaller stripes defeat the eviction policy
+	public static long WRITEBACK_INTERVAL = 1000;	// milliseconds
+
+	protected Stripe [] 				 stripes;
+	private EvictionPolicy.Type			 policy = EvictionPolicy.Type.LRU;
+
+	private Thread 						 writer = null;
+	private volatile boolean			 writing = false;
+	private final Object				 writer_lock = new Object();
 
 
 	public FullyAssociativeCache( String file, int pg_size, int pg_count, boolean read_only, boolean verbose ) throws IOException {
 		super(file, pg_size, pg_count, read_only, verbose);
-		evict = new EvictionPolicy.LRU(this,verbose);
+		int n = Math.max( 1, Math.min( STRIPES, pg_count/MIN_STRIPE_PAGES ) );
+		stripes = new Stripe[n];
+		for(int i = 0; i < n; i++){
+			stripes[i] = new Stripe( pg_count/n + ( (i < pg_count%n) ? 1 : 0 ), policy, verbose );
+		}
+		if( !read_only ) startWriteBack();
+	}
+
+
+	/**
+	 * One lock's share of the cache.
+	 */
+	protected static class Stripe implements EvictionPolicy.Owner {
+		HashMap<Long, BasePage>   page_table = new HashMap<Long,BasePage>();
+		ArrayDeque<BasePage>	  free = new ArrayDeque<BasePage>();	// evicted pages, reused with their buffers
+		EvictionPolicy			  evict;
+		int 					  capacity;
+		boolean					  verbose;
+
+		Stripe( int capacity, EvictionPolicy.Type type, boolean verbose ){
+			this.capacity = capacity;
+			this.verbose  = verbose;
+			this.evict    = EvictionPolicy.create( type, this, verbose );
+		}
+
+		@Override public int getCapacity( ){ return capacity; }
+		@Override public int size( ){ return page_table.size(); }
+
+		@Override
+		public boolean isEvictable( long page ){
+			BasePage p = page_table.get( page );
+			return p == null || !p.isPinned();
+		}
+
+		@Override
+		public void evict( long ... pages ) throws IOException {
+			for ( long page : pages ) {
+				BasePage p = page_table.remove( page );
+				if ( p == null ) continue;
+				boolean wb = p.writeBack();
+				free.push( p );
+				if (verbose) {
+					System.out.printf("Evicting page %d %s\n", page,
+							(wb ? "(wb)" : ""));
+				}
+			}
+		}
+	}
+
+	protected Stripe getStripe( long page_id ){
+		return stripes[ (int)( ( (page_id * 0x9E3779B97F4A7C15L) >>> 32 ) % stripes.length ) ];
 	}
 
 
+	/**
+	 * Replaces the eviction policy. Pages already cached are kept, and are
+	 * given to the new policy in no particular order.
+	 */
+	public void setEvictionPolicy( EvictionPolicy.Type type ) throws IOException {
+		policy = type;
+		for( Stripe s : stripes ){
+			synchronized( s ){
+				s.evict = EvictionPolicy.create( type, s, verbose );
+				HashMap<Long, BasePage> cached = new HashMap<Long,BasePage>( s.page_table );
+				s.page_table.clear();
+				for( Entry<Long, BasePage> page : cached.entrySet() ){
+					s.evict.Admit( page.getKey() );
+					s.page_table.put( page.getKey(), page.getValue() );
+				}
+			}
+		}
+	}
+
+	public EvictionPolicy.Type getEvictionPolicy( ){ return policy; }
+
+
+	/**
+	 * Writes back every dirty page, in file offset order. Pages are pinned
+	 * meanwhile, so other threads keep working on the cache.
+	 */
 	public void writeBackAll() throws IOException {
-		Iterator<Entry<Long, BasePage>> it = page_table.entrySet().iterator();
-		while (it.hasNext()) {
-			Entry<Long, BasePage> page = it.next();
-			if( page.getValue().writeBack() && verbose) System.out.printf( "Wrote-back page %d\n", page.getKey() );
+		ArrayList<BasePage> dirty = new ArrayList<BasePage>();
+		for( Stripe s : stripes ){
+			synchronized( s ){
+				for( BasePage p : s.page_table.values() ){
+					if( !p.isDirty() ) continue;
+					p.pin();
+					dirty.add( p );
+				}
+			}
 		}
-	}	
-	
-	public void evict( long ... pages ) throws IOException {
-		for ( long page : pages ) {
-			if (page == -1) continue;
-			if (!page_table.containsKey(page)) continue;
-		
-			boolean wb = page_table.get(page).writeBack();
-			page_table.remove(page);
-			if (verbose) {
-				System.out.printf("Evicting page %d %s\n", page,
-						(wb ? "(wb)" : ""));
+		dirty.sort( Comparator.comparingLong( BasePage::getPageID ) );
+		try {
+			for( BasePage p : dirty ){
+				if( p.writeBack() && verbose) System.out.printf( "Wrote-back page %d\n", p.getPageID() );
 			}
-		}		
+		} finally {
+			for( BasePage p : dirty ) p.unpin();
+		}
 	}	
-	
+
+	private void startWriteBack( ){
+		writing = true;
+		writer = new Thread( () -> {
+			while( writing ){
+				synchronized( writer_lock ){
+					try {
+						writer_lock.wait( WRITEBACK_INTERVAL );
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if( !writing ) break;
+				try {
+					writeBackAll();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, "cache-writeback" );
+		writer.setDaemon( true );
+		writer.start();
+	}
+
+	// not interrupted, an interrupt during channel I/O would close the channel
+	@Override
+	protected void shutdown( ){
+		if( writer == null ) return;
+		writing = false;
+		synchronized( writer_lock ){
+			writer_lock.notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+	}
 
 
 	@Override
 	public void PrintPageInfo( ){
 		System.out.printf("Cache Page Info\n");
-		Iterator<Entry<Long, BasePage>> it = page_table.entrySet().iterator();
-		while (it.hasNext()) {
-			Entry<Long, BasePage> page = it.next();
-			System.out.printf("  Page %d: %d / %d\n", page.getKey(),page.getValue().getAccessTime(), page.getValue().getAccessCount());
+		for( Stripe s : stripes ){
+			synchronized( s ){
+				for( Entry<Long, BasePage> page : s.page_table.entrySet() ){
+					System.out.printf("  Page %d: %d / %d\n", page.getKey(),page.getValue().getAccessTime(), page.getValue().getAccessCount());
+				}
+			}
 		}
 	}
 
 
 	@Override
 	public int GetCurrentPageCount() {
-		return page_table.size();
+		int ret = 0;
+		for( Stripe s : stripes ){
+			synchronized( s ){
+				ret += s.page_table.size();
+			}
+		}
+		return ret;
 	}
 	
 	
 	protected abstract BasePage createPage( ) throws IOException ;
 	
+	/**
+	 * Gets a page and pins it. Every call must be matched by unpinPage().
+	 */
 	@SuppressWarnings("unchecked")
-	protected PageType getPage( long page_id ) throws IOException {
-		if( page_table.size() > page_count ){
-			evict.Evict(4);
-		}
-		if( !page_table.containsKey( page_id ) ){
-			page_table.put( page_id, createPage()  );
-			if( verbose ){
-				System.out.printf( "Load page %d\n", page_id );
+	protected PageType pinPage( long page_id ) throws IOException {
+		Stripe s = getStripe( page_id );
+		synchronized( s ){
+			BasePage page = s.page_table.get( page_id );
+			if( page != null ){
+				s.evict.Access( page_id );
 			}
+			else {
+				page = s.free.poll();
+				if( page == null ) page = createPage();
+				page.loadPage( page_id );
+				s.evict.Admit( page_id );
+				s.page_table.put( page_id, page );
+				if( verbose ){
+					System.out.printf( "Load page %d\n", page_id );
+				}
+			}
+			page.pin();
+			return (PageType) page;
 		}
-		return (PageType) page_table.get(page_id);
+	}
+
+	protected void unpinPage( BasePage page ){
+		page.unpin();
+	}
+
+	/**
+	 * Gets a page without pinning it, so it is only safe while no other
+	 * thread uses the cache.
+	 */
+	protected PageType getPage( long page_id ) throws IOException {
+		PageType ret = pinPage( page_id );
+		unpinPage( ret );
+		return ret;
 	}
 
 	
@@ -0,0 +1,267 @@
+/*
+ *     ALMA TDA - Contour tree based simplification and visualization for ALMA
+ *     data cubes.
+ *     Copyright (C) 2016 PAUL ROSEN
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *     You may contact the Paul Rosen at <prosen@usf.edu>.
+ */
+package usf.saav.common.data.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * N-way set-associative page cache. Each page id hashes to one set of ways
+ * slots, and a miss replaces the least recently used unpinned slot of that
+ * set. Hashing the page id spreads strided access patterns over the sets.
+ * Each set has its own lock, and callers pin a page while using it.
+ * 
+ * With setPrefetch(n), a miss on the page after the previous miss queues the
+ * next n pages for a background thread to load.
+ */
+public abstract class SetAssociativeCache<PageType extends BasePage> extends BaseCache<PageType> {
+
+	public static int DEFAULT_WAYS = 8;
+
+	protected BasePage [] 				 page_table;	// set s occupies [s*ways, (s+1)*ways)
+	private long [] 					 last_use;
+	private Object [] 					 locks;
+	private long [] 					 clock;
+	protected int 						 ways;
+	protected int 						 sets;
+
+	private int 						 prefetch = 0;
+	private volatile long 				 last_miss = -2;
+	private LinkedBlockingQueue<Long>	 prefetch_queue = null;
+	private Thread 						 prefetcher = null;
+	private volatile boolean			 prefetching = false;
+
+	protected abstract BasePage createPage( ) throws IOException ;
+	
+	public SetAssociativeCache( String file, int pg_size, int pg_count, int ways, boolean read_only, boolean verbose ) throws IOException {
+		super(file, pg_size, pg_count, read_only, verbose );
+
+		this.ways = Math.max( 1, Math.min( ways, pg_count ) );
+		this.sets = Math.max( 1, (pg_count + this.ways - 1) / this.ways );
+		// rounded up to whole sets, so GetPageCount() reports the real capacity
+		this.page_count = sets*this.ways;
+
+		this.page_table = new BasePage[sets*this.ways];
+		this.last_use   = new long[page_table.length];
+		this.clock      = new long[sets];
+		this.locks      = new Object[sets];
+		for(int i = 0; i < page_table.length; i++){
+			page_table[i] = createPage( );
+		}
+		for(int s = 0; s < sets; s++){
+			locks[s] = new Object();
+		}
+	}
+
+	public int GetWays( ){ return ways; }
+	public int GetSets( ){ return sets; }
+
+	protected int getSet( long page_id ){
+		return (int)( ( (page_id * 0x9E3779B97F4A7C15L) >>> 32 ) % sets );
+	}
+
+
+	/**
+	 * Gets a page and pins it. Every call must be matched by unpinPage().
+	 */
+	@SuppressWarnings("unchecked")
+	protected PageType pinPage( long page_id ) throws IOException {
+		return (PageType) fetch( page_id, true );
+	}
+
+	protected void unpinPage( BasePage page ){
+		page.unpin();
+	}
+
+	/**
+	 * Gets a page without pinning it, so it is only safe while no other
+	 * thread uses the cache.
+	 */
+	protected PageType getPage( long page_id ) throws IOException {
+		PageType ret = pinPage( page_id );
+		unpinPage( ret );
+		return ret;
+	}
+
+	private BasePage fetch( long page_id, boolean demand ) throws IOException {
+		BasePage ret = lookup( page_id );
+		if( ret != null ) return ret;
+		ret = replace( page_id );
+		// outside the set lock, checking the following pages takes their locks
+		if( demand ) missed( page_id );
+		return ret;
+	}
+
+	private BasePage lookup( long page_id ){
+		int set = getSet( page_id );
+		synchronized( locks[set] ){
+			for(int i = set*ways; i < (set+1)*ways; i++){
+				if( page_table[i].getPageID() == page_id ){
+					last_use[i] = ++clock[set];
+					page_table[i].pin();
+					return page_table[i];
+				}
+			}
+		}
+		return null;
+	}
+
+	private BasePage replace( long page_id ) throws IOException {
+		int set = getSet( page_id );
+		int base = set*ways;
+		while( true ){
+			synchronized( locks[set] ){
+				int victim = -1;
+				for(int i = base; i < base+ways; i++){
+					BasePage p = page_table[i];
+					if( p.getPageID() == page_id ){
+						last_use[i] = ++clock[set];
+						p.pin();
+						return p;
+					}
+					if( !p.isPinned() && ( victim == -1 || last_use[i] < last_use[victim] ) ) victim = i;
+				}
+				if( victim != -1 ){
+					BasePage p = page_table[victim];
+					long old = p.getPageID();
+					// loadPage writes the old page back first
+					p.loadPage( page_id );
+					last_use[victim] = ++clock[set];
+					p.pin();
+					if( verbose ){
+						System.out.printf( "Load page %d (replacing %d)\n", page_id, old );
+					}
+					return p;
+				}
+			}
+			// every way of the set is in use, wait for one to be unpinned
+			Thread.yield();
+		}
+	}
+
+
+	/**
+	 * Pages to read ahead after sequential misses, 0 to disable.
+	 */
+	public synchronized void setPrefetch( int pages ){
+		prefetch = Math.max( 0, pages );
+		if( prefetch > 0 && prefetcher == null ){
+			prefetch_queue = new LinkedBlockingQueue<Long>();
+			prefetching = true;
+			prefetcher = new Thread( () -> {
+				while( prefetching ){
+					try {
+						Long pg = prefetch_queue.poll( 100, TimeUnit.MILLISECONDS );
+						if( pg == null ) continue;
+						fetch( pg, false ).unpin();
+					} catch (InterruptedException e) {
+						return;
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}, "cache-prefetch" );
+			prefetcher.setDaemon( true );
+			prefetcher.start();
+		}
+	}
+
+	public int getPrefetch( ){ return prefetch; }
+
+	private void missed( long page_id ){
+		boolean sequential = ( page_id == last_miss+1 );
+		last_miss = page_id;
+		if( !sequential || prefetch == 0 ) return;
+		for(int i = 1; i <= prefetch; i++){
+			if( !isCached( page_id+i ) ) prefetch_queue.offer( page_id+i );
+		}
+		// the prefetched pages do not count as misses, so the next sequential miss is after them
+		last_miss = page_id+prefetch;
+	}
+
+	private boolean isCached( long page_id ){
+		int set = getSet( page_id );
+		synchronized( locks[set] ){
+			for(int i = set*ways; i < (set+1)*ways; i++){
+				if( page_table[i].getPageID() == page_id ) return true;
+			}
+		}
+		return false;
+	}
+
+	// not interrupted, an interrupt during channel I/O would close the channel
+	@Override
+	protected synchronized void shutdown( ){
+		if( prefetcher == null ) return;
+		prefetching = false;
+		try {
+			prefetcher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		prefetcher = null;
+	}
+
+
+	/**
+	 * Writes back every dirty page, in file offset order.
+	 */
+	public void writeBackAll() throws IOException {
+		ArrayList<BasePage> dirty = new ArrayList<BasePage>();
+		for(int s = 0; s < sets; s++){
+			synchronized( locks[s] ){
+				for(int i = s*ways; i < (s+1)*ways; i++){
+					if( !page_table[i].isDirty() ) continue;
+					page_table[i].pin();
+					dirty.add( page_table[i] );
+				}
+			}
+		}
+		dirty.sort( Comparator.comparingLong( BasePage::getPageID ) );
+		try {
+			for( BasePage p : dirty ){
+				if( p.writeBack() && verbose) System.out.printf( "Wrote-back page %d\n", p.getPageID() );
+			}
+		} finally {
+			for( BasePage p : dirty ) p.unpin();
+		}
+	}	
+	
+	 
+	public void PrintPageInfo( ){
+		System.out.printf("Cache Page Info\n");
+		for( BasePage page : page_table )
+			System.out.printf("  Page %d: %d / %d\n", page.getPageID(),page.getAccessTime(), page.getAccessCount());
+	}
+	
+	
+	public int GetCurrentPageCount( ){
+		int ret = 0;
+		for( BasePage page : page_table ){
+			if( page.getPageID() >= 0 ) ret++;
+		}
+		return ret;
+	}
+	
+}